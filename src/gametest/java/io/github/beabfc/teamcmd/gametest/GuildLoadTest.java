@@ -0,0 +1,28 @@
+package io.github.beabfc.teamcmd.gametest;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+
+/**
+ * Runs the load simulation as a game test, so that {@code ./gradlew runLoadSimulation} can be used as a regression
+ * gate before a release.
+ */
+public class GuildLoadTest implements FabricGameTest {
+    public static final int MAX_TICKS = 72000;
+
+    @GameTest(templateName = EMPTY_STRUCTURE, tickLimit = MAX_TICKS + 20)
+    public void loadSimulation(TestContext context) {
+        LoadSimulation.Settings settings = LoadSimulation.Settings.fromSystemProperties();
+        LoadSimulation simulation = LoadSimulation.start(context.getWorld(), settings);
+        context.waitAndRun(settings.ticks(), () -> {
+            LoadSimulation.Result result = simulation.stop();
+            if (settings.maxMsptP99() > 0 && result.msptP99() > settings.maxMsptP99()) {
+                throw new GameTestException(String.format("Tick time p99 of %.2f ms is above the limit of %.2f ms",
+                    result.msptP99(), settings.maxMsptP99()));
+            }
+            context.complete();
+        });
+    }
+}
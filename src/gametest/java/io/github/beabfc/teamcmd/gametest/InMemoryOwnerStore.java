@@ -0,0 +1,44 @@
+package io.github.beabfc.teamcmd.gametest;
+
+import io.github.beabfc.teamcmd.OwnerStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for LuckPerms during the load simulation. Every call completes on another thread after a fixed delay, like
+ * a round trip to the permission database would.
+ */
+public class InMemoryOwnerStore implements OwnerStore {
+    private final Map<UUID, String> owners = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    public InMemoryOwnerStore(long delayMillis) {
+        this.executor = CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, String>> loadAll() {
+        return CompletableFuture.supplyAsync(() -> new HashMap<>(this.owners), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(UUID owner, String teamName) {
+        return CompletableFuture.runAsync(() -> {
+            if (teamName == null) {
+                this.owners.remove(owner);
+            } else {
+                this.owners.put(owner, teamName);
+            }
+        }, this.executor);
+    }
+
+    public int size() {
+        return this.owners.size();
+    }
+}
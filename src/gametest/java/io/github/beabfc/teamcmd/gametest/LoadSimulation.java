@@ -0,0 +1,279 @@
+package io.github.beabfc.teamcmd.gametest;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.mojang.authlib.GameProfile;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import io.github.beabfc.teamcmd.GuildSession;
+import io.github.beabfc.teamcmd.GuildSessions;
+import io.github.beabfc.teamcmd.TeamCommand;
+import io.github.beabfc.teamcmd.TeamUtil;
+import io.github.beabfc.teamcmd.gametest.mixin.PlayerManagerAccessor;
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import net.fabricmc.fabric.api.entity.FakePlayer;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.network.message.LastSeenMessageList;
+import net.minecraft.network.packet.c2s.play.ChatMessageC2SPacket;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Formatting;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Spawns fake players and lets them use the guild commands in a random but repeatable mix, while a {@link TickRecorder}
+ * measures what that costs the server. Commands are dispatched exactly like typed ones, so permission checks, rate
+ * limits, the audit log and the store are all part of the measurement. Players with guild chat toggled on send plain
+ * chat messages, which take the same path as those of a real client.
+ */
+public class LoadSimulation {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String PROPERTY_PREFIX = "teamcmd.load.";
+    private static final String REPORT_FILE = "teamcmd-load-report.json";
+    // how many random players are looked at before an action is skipped for lack of a suitable one
+    private static final int MAX_ATTEMPTS = 16;
+    private static final Formatting[] COLORS = Arrays.stream(Formatting.values())
+        .filter(Formatting::isColor)
+        .toArray(Formatting[]::new);
+
+    private static LoadSimulation current;
+
+    private final MinecraftServer server;
+    private final Settings settings;
+    private final TickRecorder recorder;
+    private final SplittableRandom random;
+    private final List<ServerPlayerEntity> players = new ArrayList<>();
+    private final EnumMap<Action, int[]> outcomes = new EnumMap<>(Action.class);
+    private final int totalWeight = Arrays.stream(Action.values()).mapToInt(action -> action.weight).sum();
+    private int guildCounter;
+
+    private LoadSimulation(MinecraftServer server, Settings settings) {
+        this.server = server;
+        this.settings = settings;
+        this.recorder = new TickRecorder(settings.ticks() + 1);
+        this.random = new SplittableRandom(settings.seed());
+        for (Action action : Action.values()) {
+            this.outcomes.put(action, new int[Outcome.values().length]);
+        }
+    }
+
+    public static LoadSimulation start(ServerWorld world, Settings settings) {
+        if (current != null) throw new IllegalStateException("A load simulation is already running");
+        LoadSimulation simulation = new LoadSimulation(world.getServer(), settings);
+        simulation.spawnPlayers(world);
+        simulation.recorder.start();
+        current = simulation;
+        LOGGER.info("Started load simulation with {}", settings);
+        return simulation;
+    }
+
+    static void onTickStart(MinecraftServer server) {
+        if (current == null) return;
+        current.recorder.startTick();
+        current.runActions();
+    }
+
+    static void onTickEnd(MinecraftServer server) {
+        if (current != null) current.recorder.endTick();
+    }
+
+    /**
+     * Ends the simulation, logs the fake players out and writes the report to the run directory of the server.
+     */
+    public Result stop() {
+        this.recorder.stop();
+        current = null;
+        PlayerManagerAccessor playerManager = (PlayerManagerAccessor) this.server.getPlayerManager();
+        for (ServerPlayerEntity player : this.players) {
+            ServerPlayConnectionEvents.DISCONNECT.invoker().onPlayDisconnect(player.networkHandler, this.server);
+            playerManager.getPlayers().remove(player);
+            playerManager.getPlayerMap().remove(player.getUuid());
+        }
+
+        Result result = new Result(this.recorder.getTicks(), this.recorder.getMspt(50), this.recorder.getMspt(99),
+            this.recorder.getMspt(100));
+        JsonObject report = this.recorder.toJson();
+        report.add("settings", new GsonBuilder().create().toJsonTree(this.settings));
+        report.addProperty("guilds", this.server.getScoreboard().getTeams().size());
+        JsonObject actions = new JsonObject();
+        this.outcomes.forEach((action, counts) -> {
+            JsonObject outcome = new JsonObject();
+            for (Outcome type : Outcome.values()) {
+                outcome.addProperty(type.name().toLowerCase(Locale.ROOT), counts[type.ordinal()]);
+            }
+            actions.add(action.name().toLowerCase(Locale.ROOT), outcome);
+        });
+        report.add("actions", actions);
+
+        Path file = this.server.getRunDirectory().toPath().resolve(REPORT_FILE);
+        try {
+            Files.writeString(file, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+        } catch (IOException ex) {
+            LOGGER.error("Could not write the load simulation report", ex);
+        }
+        LOGGER.info("Load simulation finished after {} ticks, mspt p50 {} p99 {} max {}, report written to {}",
+            result.ticks(), String.format("%.2f", result.msptP50()), String.format("%.2f", result.msptP99()),
+            String.format("%.2f", result.msptMax()), file.toAbsolutePath());
+        return result;
+    }
+
+    // the fake players are added to the player list so that player arguments can find them
+    private void spawnPlayers(ServerWorld world) {
+        PlayerManagerAccessor playerManager = (PlayerManagerAccessor) this.server.getPlayerManager();
+        for (int i = 0; i < this.settings.players(); i++) {
+            String name = "load" + i;
+            UUID uuid = UUID.nameUUIDFromBytes(("teamcmd-load:" + name).getBytes(StandardCharsets.UTF_8));
+            ServerPlayerEntity player = FakePlayer.get(world, new GameProfile(uuid, name));
+            playerManager.getPlayers().add(player);
+            playerManager.getPlayerMap().put(uuid, player);
+            ServerPlayConnectionEvents.JOIN.invoker().onPlayReady(player.networkHandler,
+                ServerPlayNetworking.getSender(player.networkHandler), this.server);
+            this.players.add(player);
+        }
+    }
+
+    private void runActions() {
+        for (int i = 0; i < this.settings.actionsPerTick(); i++) {
+            Action action = pickAction();
+            Outcome outcome = perform(action);
+            this.outcomes.get(action)[outcome.ordinal()]++;
+        }
+    }
+
+    private Outcome perform(Action action) {
+        return switch (action) {
+            case CREATE -> withPlayer(player -> player.getScoreboardTeam() == null, player -> run(player,
+                "create load" + this.guildCounter++ + " " + COLORS[this.random.nextInt(COLORS.length)].getName()));
+            case INVITE -> withPlayer(this::isOwner, owner -> {
+                ServerPlayerEntity target = find(player -> player.getScoreboardTeam() == null);
+                return target == null ? Outcome.SKIPPED : run(owner, "invite " + target.getEntityName());
+            });
+            case ACCEPT -> withPlayer(player -> player.getScoreboardTeam() == null
+                && TeamUtil.getInvitedTeam(player) != null, player -> run(player, "accept"));
+            case CHAT_TOGGLE -> withPlayer(player -> true, player -> run(player, "chat toggle"));
+            case CHAT_MESSAGE -> withPlayer(player -> player.getScoreboardTeam() != null, player -> {
+                String message = "load test message " + this.random.nextInt(1000);
+                GuildSession session = GuildSessions.get(player.getUuid());
+                return session != null && session.isGuildChat() ? chat(player, message)
+                    : run(player, "chat message " + message);
+            });
+            case KICK -> withPlayer(this::isOwner, owner -> {
+                List<String> others = new ArrayList<>(owner.getScoreboardTeam().getPlayerList());
+                others.remove(owner.getEntityName());
+                if (others.isEmpty()) return Outcome.SKIPPED;
+                return run(owner, "kick " + others.get(this.random.nextInt(others.size())));
+            });
+            case DISBAND -> withPlayer(this::isOwner, player -> run(player, "disband confirm"));
+        };
+    }
+
+    private Outcome withPlayer(Predicate<ServerPlayerEntity> condition,
+                               Function<ServerPlayerEntity, Outcome> action) {
+        ServerPlayerEntity player = find(condition);
+        return player == null ? Outcome.SKIPPED : action.apply(player);
+    }
+
+    private ServerPlayerEntity find(Predicate<ServerPlayerEntity> condition) {
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            ServerPlayerEntity player = this.players.get(this.random.nextInt(this.players.size()));
+            if (condition.test(player)) return player;
+        }
+        return null;
+    }
+
+    private boolean isOwner(ServerPlayerEntity player) {
+        return player.getScoreboardTeam() instanceof Team team && TeamUtil.isOwner(player, team);
+    }
+
+    // rejected commands are counted separately, anything else thrown is a bug and fails the test
+    private Outcome run(ServerPlayerEntity player, String arguments) {
+        CommandDispatcher<ServerCommandSource> dispatcher = this.server.getCommandManager().getDispatcher();
+        try {
+            dispatcher.execute(TeamCommand.getConfig().commandName + " " + arguments, player.getCommandSource());
+            return Outcome.SUCCEEDED;
+        } catch (CommandSyntaxException ex) {
+            return Outcome.REJECTED;
+        }
+    }
+
+    /**
+     * Hands a chat packet to the network handler of the player, where guild chat takes it over. Real packets arrive
+     * on a network thread, here the hand-off to the server thread runs the fan-out right away.
+     */
+    private Outcome chat(ServerPlayerEntity player, String message) {
+        long throttled = GuildMetrics.getPlayerChatThrottled() + GuildMetrics.getGuildChatThrottled();
+        player.networkHandler.onChatMessage(new ChatMessageC2SPacket(message, Instant.now(), 0L, null,
+            new LastSeenMessageList.Acknowledgment(0, new BitSet())));
+        boolean rejected = GuildMetrics.getPlayerChatThrottled() + GuildMetrics.getGuildChatThrottled() > throttled;
+        return rejected ? Outcome.REJECTED : Outcome.SUCCEEDED;
+    }
+
+    private Action pickAction() {
+        int roll = this.random.nextInt(this.totalWeight);
+        for (Action action : Action.values()) {
+            roll -= action.weight;
+            if (roll < 0) return action;
+        }
+        throw new IllegalStateException();
+    }
+
+    private enum Action {
+        CREATE(5),
+        INVITE(15),
+        ACCEPT(15),
+        CHAT_TOGGLE(5),
+        CHAT_MESSAGE(50),
+        KICK(5),
+        DISBAND(5);
+
+        private final int weight;
+
+        Action(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private enum Outcome {
+        SUCCEEDED,
+        REJECTED,
+        SKIPPED
+    }
+
+    /**
+     * Read from system properties starting with {@code teamcmd.load.}, the run configuration passes the matching
+     * Gradle properties through.
+     *
+     * @param ownerStoreDelay milliseconds until the in-memory owner store completes a call
+     * @param maxMsptP99      the test fails if the 99th percentile of the tick time is above this, {@code 0} to never
+     *                        fail
+     */
+    public record Settings(int players, int ticks, int actionsPerTick, long seed, long ownerStoreDelay,
+                           double maxMsptP99) {
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "players", 300)),
+                Math.max(1, Math.min(Integer.getInteger(PROPERTY_PREFIX + "ticks", 1200), GuildLoadTest.MAX_TICKS)),
+                Math.max(0, Integer.getInteger(PROPERTY_PREFIX + "actionsPerTick", 10)),
+                Long.getLong(PROPERTY_PREFIX + "seed", 1),
+                Math.max(0, Long.getLong(PROPERTY_PREFIX + "ownerStoreDelay", 20)),
+                Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "maxMsptP99", "0")));
+        }
+    }
+
+    public record Result(int ticks, double msptP50, double msptP99, double msptMax) {
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.beabfc.teamcmd.gametest;
+
+import io.github.beabfc.teamcmd.GuildOwners;
+import net.fabricmc.api.DedicatedServerModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+public class LoadSimulationMod implements DedicatedServerModInitializer {
+
+    @Override
+    public void onInitializeServer() {
+        // LuckPerms is not part of the test server
+        GuildOwners.setStore(new InMemoryOwnerStore(LoadSimulation.Settings.fromSystemProperties().ownerStoreDelay()));
+        ServerTickEvents.START_SERVER_TICK.register(LoadSimulation::onTickStart);
+        ServerTickEvents.END_SERVER_TICK.register(LoadSimulation::onTickEnd);
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.beabfc.teamcmd.gametest;
+
+import com.google.gson.JsonObject;
+import com.sun.management.ThreadMXBean;
+import net.minecraft.network.packet.Packet;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the length of every server tick, the bytes allocated by the server thread during it and the packets sent
+ * to players.
+ */
+public class TickRecorder {
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final int TOP_PACKETS = 10;
+
+    // packets can be sent from netty threads as well
+    private static final Map<Class<?>, LongAdder> packetsByType = new ConcurrentHashMap<>();
+    private static final LongAdder packets = new LongAdder();
+    private static volatile boolean recording;
+
+    private final long[] tickNanos;
+    private final long[] allocatedBytes;
+    private final long[] packetsSent;
+    private final boolean allocationSupported = THREADS.isThreadAllocatedMemorySupported()
+        && THREADS.isThreadAllocatedMemoryEnabled();
+    private int ticks;
+    private long tickStart;
+    private long allocationStart;
+    private long packetStart;
+
+    public TickRecorder(int capacity) {
+        this.tickNanos = new long[capacity];
+        this.allocatedBytes = new long[capacity];
+        this.packetsSent = new long[capacity];
+    }
+
+    public static void onPacketSent(Packet<?> packet) {
+        if (!recording) return;
+        packets.increment();
+        packetsByType.computeIfAbsent(packet.getClass(), type -> new LongAdder()).increment();
+    }
+
+    public void start() {
+        packets.reset();
+        packetsByType.clear();
+        recording = true;
+    }
+
+    public void stop() {
+        recording = false;
+    }
+
+    public void startTick() {
+        this.tickStart = System.nanoTime();
+        this.allocationStart = this.allocationSupported ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+        this.packetStart = packets.sum();
+    }
+
+    public void endTick() {
+        if (this.tickStart == 0 || this.ticks == this.tickNanos.length) return;
+        this.tickNanos[this.ticks] = System.nanoTime() - this.tickStart;
+        if (this.allocationSupported) {
+            this.allocatedBytes[this.ticks] = THREADS.getCurrentThreadAllocatedBytes() - this.allocationStart;
+        }
+        this.packetsSent[this.ticks] = packets.sum() - this.packetStart;
+        this.ticks++;
+        this.tickStart = 0;
+    }
+
+    public int getTicks() {
+        return this.ticks;
+    }
+
+    public double getMspt(double percentile) {
+        return percentile(this.tickNanos, percentile) / 1_000_000.0;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("ticks", this.ticks);
+
+        JsonObject mspt = new JsonObject();
+        mspt.addProperty("mean", mean(this.tickNanos) / 1_000_000.0);
+        mspt.addProperty("p50", getMspt(50));
+        mspt.addProperty("p95", getMspt(95));
+        mspt.addProperty("p99", getMspt(99));
+        mspt.addProperty("max", getMspt(100));
+        json.add("mspt", mspt);
+
+        if (this.allocationSupported) {
+            JsonObject allocation = new JsonObject();
+            allocation.addProperty("mean", mean(this.allocatedBytes));
+            allocation.addProperty("p50", percentile(this.allocatedBytes, 50));
+            allocation.addProperty("p99", percentile(this.allocatedBytes, 99));
+            allocation.addProperty("max", percentile(this.allocatedBytes, 100));
+            json.add("allocatedBytesPerTick", allocation);
+        }
+
+        JsonObject packetsJson = new JsonObject();
+        packetsJson.addProperty("total", packets.sum());
+        packetsJson.addProperty("meanPerTick", mean(this.packetsSent));
+        packetsJson.addProperty("p99PerTick", percentile(this.packetsSent, 99));
+        packetsJson.addProperty("maxPerTick", percentile(this.packetsSent, 100));
+        JsonObject byType = new JsonObject();
+        packetsByType.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<Class<?>, LongAdder> entry) -> entry.getValue().sum())
+                .reversed())
+            .limit(TOP_PACKETS)
+            .forEach(entry -> byType.addProperty(entry.getKey().getSimpleName(), entry.getValue().sum()));
+        packetsJson.add("byType", byType);
+        json.add("packets", packetsJson);
+        return json;
+    }
+
+    private double mean(long[] values) {
+        if (this.ticks == 0) return 0;
+        long sum = 0;
+        for (int i = 0; i < this.ticks; i++) {
+            sum += values[i];
+        }
+        return (double) sum / this.ticks;
+    }
+
+    // nearest rank, 100 is the maximum
+    private long percentile(long[] values, double percentile) {
+        if (this.ticks == 0) return 0;
+        long[] sorted = Arrays.copyOf(values, this.ticks);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(rank, sorted.length) - 1)];
+    }
+}
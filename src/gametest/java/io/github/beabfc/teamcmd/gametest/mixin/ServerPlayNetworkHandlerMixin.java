@@ -0,0 +1,18 @@
+package io.github.beabfc.teamcmd.gametest.mixin;
+
+import io.github.beabfc.teamcmd.gametest.TickRecorder;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerPlayNetworkHandler.class)
+public class ServerPlayNetworkHandlerMixin {
+    // fake players override the two argument variant to drop the packet, this one still runs for them
+    @Inject(method = "sendPacket(Lnet/minecraft/network/packet/Packet;)V", at = @At("HEAD"))
+    private void countPacket(Packet<?> packet, CallbackInfo ci) {
+        TickRecorder.onPacketSent(packet);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.beabfc.teamcmd;
+
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A scoreboard whose teams hold a guild id like they do in the game, where the id is added to every team by a mixin.
+ */
+final class BenchmarkScoreboard extends Scoreboard {
+    private final Map<String, Team> teams = new HashMap<>();
+
+    @Override
+    public Team addTeam(String name) {
+        Team team = new BenchmarkTeam(this, name);
+        this.teams.put(name, team);
+        return team;
+    }
+
+    @Override
+    public Team getTeam(String name) {
+        return this.teams.get(name);
+    }
+
+    @Override
+    public Collection<Team> getTeams() {
+        return this.teams.values();
+    }
+
+    @Override
+    public Collection<String> getTeamNames() {
+        return this.teams.keySet();
+    }
+
+    private static final class BenchmarkTeam extends Team implements GuildIdHolder {
+        private volatile int guildId = GuildRegistry.NO_ID;
+
+        private BenchmarkTeam(Scoreboard scoreboard, String name) {
+            super(scoreboard, name);
+        }
+
+        @Override
+        public int teamcmd$getGuildId() {
+            return this.guildId;
+        }
+
+        @Override
+        public void teamcmd$setGuildId(int id) {
+            this.guildId = id;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.beabfc.teamcmd;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.Arrays;
+
+final class BenchmarkSupport {
+    private static final Formatting[] COLORS = Arrays.stream(Formatting.values())
+        .filter(Formatting::isColor)
+        .toArray(Formatting[]::new);
+
+    private BenchmarkSupport() {
+    }
+
+    static void bootstrap() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+    }
+
+    /**
+     * Creates a scoreboard with the given number of teams. Mixins are not applied outside of the game, so the teams
+     * are added to the indexes by hand.
+     */
+    static Scoreboard createScoreboard(int teams) {
+        Scoreboard scoreboard = new BenchmarkScoreboard();
+        for (int i = 0; i < teams; i++) {
+            Team team = scoreboard.addTeam("guild" + i);
+            team.setDisplayName(Text.literal("Guild" + i));
+            team.setColor(COLORS[i % COLORS.length]);
+            GuildRegistry.onTeamAdded(team);
+            GuildNameIndex.onTeamUpdated(team);
+        }
+        return scoreboard;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.beabfc.teamcmd;
+
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.util.Formatting;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duplicate name and color checks done by {@code create}, {@code set displayName} and {@code set color}, against a
+ * scan over all teams as they were done before the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DuplicateCheckBenchmark {
+
+    @Param({"100", "10000"})
+    public int teams;
+
+    private Collection<Team> teamList;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.bootstrap();
+        Scoreboard scoreboard = BenchmarkSupport.createScoreboard(this.teams);
+        this.teamList = scoreboard.getTeams();
+    }
+
+    @Benchmark
+    public boolean duplicateName() {
+        return GuildNameIndex.containsDisplayName("guild-that-does-not-exist");
+    }
+
+    @Benchmark
+    public boolean duplicateColor() {
+        return GuildNameIndex.isColorUsed(Formatting.RESET);
+    }
+
+    @Benchmark
+    public boolean duplicateNameScan() {
+        return this.teamList.stream().anyMatch(other -> other
+            .getDisplayName()
+            .getString()
+            .equalsIgnoreCase("guild-that-does-not-exist"));
+    }
+
+    @Benchmark
+    public boolean duplicateColorScan() {
+        return this.teamList.stream().anyMatch(other -> other.getColor().equals(Formatting.RESET));
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.beabfc.teamcmd;
+
+import net.minecraft.network.message.ChatVisibility;
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Formatting of a guild chat line and the fan-out to the online members of a guild on a server with many players.
+ * Players and their connections are stub-only mocks, so sending a packet costs a single no-op call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuildChatBenchmark {
+
+    @Param({"300"})
+    public int onlinePlayers;
+
+    @Param({"3", "50"})
+    public int guildSize;
+
+    private ServerPlayerEntity sender;
+    private Text senderName;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.bootstrap();
+        Scoreboard scoreboard = BenchmarkSupport.createScoreboard(this.onlinePlayers / this.guildSize + 1);
+
+        for (int i = 0; i < this.onlinePlayers; i++) {
+            String name = "player" + i;
+            Team team = scoreboard.getTeam("guild" + (i / this.guildSize));
+            scoreboard.addPlayerToTeam(name, team);
+
+            ServerPlayerEntity player = mock(ServerPlayerEntity.class, withSettings().stubOnly());
+            ServerPlayNetworkHandler handler = mock(ServerPlayNetworkHandler.class, withSettings().stubOnly());
+            handler.player = player;
+            player.networkHandler = handler;
+            when(player.getUuid()).thenReturn(UUID.randomUUID());
+            when(player.getEntityName()).thenReturn(name);
+            when(player.getScoreboard()).thenReturn(scoreboard);
+            when(player.getScoreboardTeam()).thenReturn(team);
+            when(player.getClientChatVisibility()).thenReturn(ChatVisibility.FULL);
+            when(player.getDisplayName()).thenReturn(Text.literal(name));
+            GuildRoster.onLogin(handler);
+
+            if (i == 0) this.sender = player;
+        }
+        this.senderName = this.sender.getDisplayName();
+    }
+
+    @Benchmark
+    public MutableText getGuildChatFormat() {
+        return TeamUtil.getGuildChatFormat(this.senderName, Formatting.GOLD, "hello guild");
+    }
+
+    @Benchmark
+    public void sendGuildChat() {
+        TeamUtil.sendGuildChat(this.sender, "hello guild");
+    }
+
+    @Benchmark
+    public void sendToTeammates() {
+        TeamUtil.sendToTeammates(this.sender, this.senderName);
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.beabfc.teamcmd;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Cost of the per-tick invite expiry check while invites are pending but none of them is due yet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InviteBenchmark {
+    private static final ObjIntConsumer<UUID> IGNORE = (player, teamId) -> {
+    };
+
+    @Param({"0", "1000", "100000"})
+    public int pendingInvites;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < this.pendingInvites; i++) {
+            TeamUtil.addInvite(UUID.randomUUID(), i % 100, i % 2400);
+        }
+    }
+
+    @Benchmark
+    public void tick() {
+        TeamUtil.expireInvites(0, IGNORE);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.beabfc.teamcmd;
+
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ownership checks done by every owner-only command. They are answered by the in-memory index and never reach
+ * LuckPerms, so no user manager is involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OwnerBenchmark {
+
+    @Param({"1000", "100000"})
+    public int owners;
+
+    private UUID owner;
+    private Team ownedTeam;
+    private Team otherTeam;
+    private UUID member;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.bootstrap();
+        Scoreboard scoreboard = BenchmarkSupport.createScoreboard(this.owners);
+        for (int i = 0; i < this.owners; i++) {
+            UUID uuid = UUID.randomUUID();
+            GuildOwners.setOwner(uuid, "guild" + i);
+            if (i == this.owners / 2) {
+                this.owner = uuid;
+                this.ownedTeam = scoreboard.getTeam("guild" + i);
+            }
+        }
+        this.otherTeam = scoreboard.getTeam("guild0");
+        this.member = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public boolean isOwner() {
+        return GuildOwners.isOwner(this.owner, this.ownedTeam);
+    }
+
+    @Benchmark
+    public boolean isNotOwner() {
+        return GuildOwners.isOwner(this.member, this.otherTeam);
+    }
+}
@@ -2,18 +2,21 @@ package io.github.beabfc.teamcmd;
 
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
-import net.luckperms.api.LuckPermsProvider;
-import net.luckperms.api.model.user.User;
-import net.luckperms.api.node.NodeType;
-import net.luckperms.api.node.types.MetaNode;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import io.github.beabfc.teamcmd.audit.AuditEntry;
+import io.github.beabfc.teamcmd.audit.AuditJournal;
+import io.github.beabfc.teamcmd.audit.GuildAudit;
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import net.minecraft.command.CommandSource;
 import net.minecraft.command.argument.ColorArgumentType;
 import net.minecraft.command.argument.EntityArgumentType;
-import net.minecraft.command.argument.TeamArgumentType;
+import net.minecraft.scoreboard.AbstractTeam;
 import net.minecraft.scoreboard.Scoreboard;
 import net.minecraft.scoreboard.Team;
 import net.minecraft.server.command.ServerCommandSource;
@@ -21,9 +24,15 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.*;
 import net.minecraft.util.Formatting;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import static io.github.beabfc.teamcmd.metrics.GuildMetrics.timed;
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
 
@@ -53,46 +62,150 @@ public class CommandBuilder {
         new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.fail.already_teammate"));
     private static final SimpleCommandExceptionType NOT_INVITED =
         new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.fail.not_invited"));
+    private static final DynamicCommandExceptionType NOT_INVITED_TO =
+        new DynamicCommandExceptionType(team -> Text.translatable("commands.teamcmd.fail.not_invited_to", team));
     private static final SimpleCommandExceptionType DUPLICATE_COLOR =
         new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.fail.duplicate_color"));
-    private static final DynamicCommandExceptionType TEAM_NOT_FOUND =
-        new DynamicCommandExceptionType(option -> Text.translatable("team.notFound", option));
     private static final SimpleCommandExceptionType NOT_GUILD_OWNER =
             new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.not_guild_owner"));
 
+    private static final SimpleCommandExceptionType OWN_GUILD =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.fail.own_guild"));
+    private static final SimpleCommandExceptionType ALREADY_ALLIED =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.ally.already"));
+    private static final SimpleCommandExceptionType ALREADY_ENEMY =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.enemy.already"));
+    private static final SimpleCommandExceptionType ALREADY_NEUTRAL =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.neutral.already"));
+    private static final SimpleCommandExceptionType ALLIANCE_CHAT_DISABLED =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.allychat.disabled"));
+    private static final SimpleCommandExceptionType ALLIANCE_CHAT_ALREADY_ENABLED =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.option.allianceChat.alreadyEnabled"));
+    private static final SimpleCommandExceptionType ALLIANCE_CHAT_ALREADY_DISABLED =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.option.allianceChat.alreadyDisabled"));
+
+    private static final SimpleCommandExceptionType CHAT_THROTTLED =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.guildchat.throttled"));
+    private static final DynamicCommandExceptionType PAGE_NOT_FOUND =
+        new DynamicCommandExceptionType(pages -> Text.translatable("commands.teamcmd.fail.no_page", pages));
+    private static final DynamicCommandExceptionType UNKNOWN_PLAYER =
+        new DynamicCommandExceptionType(name -> Text.translatable("commands.teamcmd.fail.unknown_player", name));
+
+    private static final SimpleCommandExceptionType PRUNE_RUNNING =
+        new SimpleCommandExceptionType(Text.translatable("commands.teamcmd.admin.prune.running"));
+    private static final DynamicCommandExceptionType RELOAD_FAILED =
+        new DynamicCommandExceptionType(error -> Text.translatable("commands.teamcmd.admin.reload.failed", error));
+
     private static final int MAX_NUMBER_IN_GUILD = 3;
+    private static final int AUDIT_PAGE_SIZE = 10;
+    private static final int PRUNE_REPORT_SIZE = 20;
+    private static final DateTimeFormatter AUDIT_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+        .withZone(ZoneId.systemDefault());
+
+    private static final SuggestionProvider<ServerCommandSource> TEAM_MEMBERS = (ctx, builder) -> {
+        ServerPlayerEntity player = ctx.getSource().getPlayer();
+        AbstractTeam team = player == null ? null : player.getScoreboardTeam();
+        return CommandSource.suggestMatching(team == null ? Collections.emptyList() : team.getPlayerList(), builder);
+    };
 
     public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
-        LiteralArgumentBuilder<ServerCommandSource> teamCmd = literal(TeamCommand.CONFIG.commandName);
+        LiteralArgumentBuilder<ServerCommandSource> teamCmd = literal(TeamCommand.getConfig().commandName);
         teamCmd
             .then(literal("create").then(argument("name", StringArgumentType.word()).then(argument("color",
-                ColorArgumentType.color()).executes(ctx -> executeCreate(ctx.getSource(),
-                StringArgumentType.getString(ctx, "name"), ColorArgumentType.getColor(ctx, "color"))))))
+                ColorArgumentType.color()).executes(timed("create", ctx -> executeCreate(ctx.getSource(),
+                StringArgumentType.getString(ctx, "name"), ColorArgumentType.getColor(ctx, "color")))))))
             .then(literal("list")
-                .executes(ctx -> executeListTeams(ctx.getSource()))
-                .then(argument("team", TeamArgumentType.team()).executes(ctx -> executeListMembers(ctx.getSource(),
-                    TeamArgumentType.getTeam(ctx, "team")))))
-            .then(literal("leave").executes(ctx -> executeLeave(ctx.getSource())))
-            .then(literal("invite").then(argument("player", EntityArgumentType.player()).executes(ctx -> executeInvitePlayer(ctx.getSource(), EntityArgumentType.getPlayer(ctx, "player")))))
-            .then(literal("accept").executes(ctx -> executeAcceptInvite(ctx.getSource())))
-            .then(literal("passOwnership").then((argument("player", EntityArgumentType.player()).executes(ctx -> executePassOwnership(ctx.getSource(), EntityArgumentType.getPlayer(ctx, "player"))))))
-            .then(literal("disband").then(literal("confirm").executes(ctx -> executeDisband(ctx.getSource()))))
+                .executes(timed("list", ctx -> executeListTeams(ctx.getSource(), GuildListings.Order.NAME, 1)))
+                .then(argument("page", IntegerArgumentType.integer(1)).executes(timed("list", ctx -> executeListTeams(ctx.getSource(),
+                    GuildListings.Order.NAME, IntegerArgumentType.getInteger(ctx, "page")))))
+                .then(listByCommand())
+                .then(GuildArgument.guild("team").executes(timed("list team", ctx -> executeListMembers(ctx.getSource(),
+                    GuildArgument.getGuild(ctx, "team"), 1)))
+                    .then(argument("page", IntegerArgumentType.integer(1)).executes(timed("list team", ctx -> executeListMembers(ctx.getSource(),
+                        GuildArgument.getGuild(ctx, "team"), IntegerArgumentType.getInteger(ctx, "page")))))))
+            .then(literal("leave").executes(timed("leave", ctx -> executeLeave(ctx.getSource()))))
+            .then(literal("invite").then(argument("player", EntityArgumentType.player()).executes(timed("invite", ctx -> executeInvitePlayer(ctx.getSource(), EntityArgumentType.getPlayer(ctx, "player"))))))
+            .then(literal("accept")
+                .executes(timed("accept", ctx -> executeAcceptInvite(ctx.getSource(), null)))
+                .then(argument("team", StringArgumentType.word())
+                    .suggests((ctx, builder) -> CommandSource.suggestMatching(ctx.getSource().getPlayer() == null ?
+                        Collections.emptyList() : TeamUtil.getInvitedTeams(ctx.getSource().getPlayer()), builder))
+                    .executes(timed("accept", ctx -> executeAcceptInvite(ctx.getSource(), StringArgumentType.getString(ctx, "team"))))))
+            .then(literal("passOwnership").then((argument("player", StringArgumentType.word()).suggests(TEAM_MEMBERS).executes(timed("passOwnership", ctx -> executePassOwnership(ctx.getSource(), StringArgumentType.getString(ctx, "player")))))))
+            .then(literal("disband").then(literal("confirm").executes(timed("disband", ctx -> executeDisband(ctx.getSource())))))
+            .then(literal("ally").then(GuildArgument.guild("team").executes(timed("ally", ctx -> executeAlly(ctx.getSource(), GuildArgument.getGuild(ctx, "team"))))))
+            .then(literal("enemy").then(GuildArgument.guild("team").executes(timed("enemy", ctx -> executeEnemy(ctx.getSource(), GuildArgument.getGuild(ctx, "team"))))))
+            .then(literal("neutral").then(GuildArgument.guild("team").executes(timed("neutral", ctx -> executeNeutral(ctx.getSource(), GuildArgument.getGuild(ctx, "team"))))))
+            .then(literal("relations").executes(timed("relations", ctx -> executeRelations(ctx.getSource()))))
             .then(literal("chat")
-                    .then(literal("message").then(argument("message", StringArgumentType.greedyString()).executes(ctx -> executeTeamMsg(ctx.getSource(), StringArgumentType.getString(ctx, "message")))))
-                    .then(literal("toggle").executes(ctx -> executeTeamChatToggle(ctx.getSource())))
-            ).then(literal("kick").then((argument("player", EntityArgumentType.player()).executes(ctx -> executeTeamKick(ctx.getSource(), EntityArgumentType.getPlayer(ctx, "player"))))));
+                    .then(literal("message").then(argument("message", StringArgumentType.greedyString()).executes(timed("chat message", ctx -> executeTeamMsg(ctx.getSource(), StringArgumentType.getString(ctx, "message"))))))
+                    .then(literal("toggle").executes(timed("chat toggle", ctx -> executeTeamChatToggle(ctx.getSource()))))
+                    .then(literal("ally").then(argument("message", StringArgumentType.greedyString()).executes(timed("chat ally", ctx -> executeAllianceMsg(ctx.getSource(), StringArgumentType.getString(ctx, "message"))))))
+                    .then(literal("history")
+                        .executes(timed("chat history", ctx -> executeChatHistory(ctx.getSource(), 1)))
+                        .then(argument("page", IntegerArgumentType.integer(1)).executes(timed("chat history", ctx -> executeChatHistory(ctx.getSource(),
+                            IntegerArgumentType.getInteger(ctx, "page"))))))
+            ).then(literal("kick").then((argument("player", StringArgumentType.word()).suggests(TEAM_MEMBERS).executes(timed("kick", ctx -> executeTeamKick(ctx.getSource(), StringArgumentType.getString(ctx, "player")))))))
+            .then(literal("find").then(argument("player", StringArgumentType.word())
+                .suggests((ctx, builder) -> CommandSource.suggestMatching(ctx.getSource().getPlayerNames(), builder))
+                .executes(timed("find", ctx -> executeFind(ctx.getSource(), StringArgumentType.getString(ctx, "player"))))));
 
         LiteralArgumentBuilder<ServerCommandSource> setCommand = literal("set")
-            .then(literal("color").then(argument("color", ColorArgumentType.color()).executes(ctx -> executeSetColor(ctx.getSource(), ColorArgumentType.getColor(ctx, "color")))))
-            .then(literal("friendlyFire").then(argument("allowed", BoolArgumentType.bool()).executes(ctx -> executeSetFriendlyFire(ctx.getSource(), BoolArgumentType.getBool(ctx, "allowed")))))
-
-            .then(literal("seeInvisibles").then(argument("allowed", BoolArgumentType.bool()).executes(ctx -> executeSetShowFriendlyInvisibles(ctx.getSource(), BoolArgumentType.getBool(ctx, "allowed")))))
-            .then(literal("displayName").then(argument("displayName", StringArgumentType.word()).executes(ctx -> executeSetDisplayName(ctx.getSource(), StringArgumentType.getString(ctx, "displayName")))));
+            .then(literal("color").then(argument("color", ColorArgumentType.color()).executes(timed("set color", ctx -> executeSetColor(ctx.getSource(), ColorArgumentType.getColor(ctx, "color"))))))
+            .then(literal("friendlyFire").then(argument("allowed", BoolArgumentType.bool()).executes(timed("set friendlyFire", ctx -> executeSetFriendlyFire(ctx.getSource(), BoolArgumentType.getBool(ctx, "allowed"))))))
+
+            .then(literal("seeInvisibles").then(argument("allowed", BoolArgumentType.bool()).executes(timed("set seeInvisibles", ctx -> executeSetShowFriendlyInvisibles(ctx.getSource(), BoolArgumentType.getBool(ctx, "allowed"))))))
+            .then(literal("displayName").then(argument("displayName", StringArgumentType.word()).executes(timed("set displayName", ctx -> executeSetDisplayName(ctx.getSource(), StringArgumentType.getString(ctx, "displayName"))))))
+            .then(literal("allianceChat").then(argument("enabled", BoolArgumentType.bool()).executes(timed("set allianceChat", ctx -> executeSetAllianceChat(ctx.getSource(), BoolArgumentType.getBool(ctx, "enabled"))))));
+
+        LiteralArgumentBuilder<ServerCommandSource> adminCommand = literal("admin")
+            .requires(source -> source.hasPermissionLevel(2))
+            .then(literal("roster").executes(timed("admin roster", ctx -> executeVerifyRoster(ctx.getSource()))))
+            .then(literal("reload").executes(timed("admin reload", ctx -> executeReload(ctx.getSource()))))
+            .then(literal("stats").executes(ctx -> executeStats(ctx.getSource())))
+            .then(pruneCommand())
+            .then(literal("audit")
+                .then(literal("guild").then(GuildArgument.guild("team")
+                    .executes(ctx -> executeAudit(ctx.getSource(), AuditJournal.guildKey(StringArgumentType.getString(ctx, "team")),
+                        StringArgumentType.getString(ctx, "team"), 1))
+                    .then(argument("page", IntegerArgumentType.integer(1)).executes(ctx -> executeAudit(ctx.getSource(),
+                        AuditJournal.guildKey(StringArgumentType.getString(ctx, "team")), StringArgumentType.getString(ctx, "team"),
+                        IntegerArgumentType.getInteger(ctx, "page"))))))
+                .then(literal("player").then(argument("player", StringArgumentType.word())
+                    .suggests((ctx, builder) -> CommandSource.suggestMatching(ctx.getSource().getPlayerNames(), builder))
+                    .executes(ctx -> executeAudit(ctx.getSource(), AuditJournal.playerKey(StringArgumentType.getString(ctx, "player")),
+                        StringArgumentType.getString(ctx, "player"), 1))
+                    .then(argument("page", IntegerArgumentType.integer(1)).executes(ctx -> executeAudit(ctx.getSource(),
+                        AuditJournal.playerKey(StringArgumentType.getString(ctx, "player")), StringArgumentType.getString(ctx, "player"),
+                        IntegerArgumentType.getInteger(ctx, "page")))))));
 
         teamCmd.then(setCommand);
+        teamCmd.then(adminCommand);
         dispatcher.register(teamCmd);
     }
 
+    private static LiteralArgumentBuilder<ServerCommandSource> pruneCommand() {
+        LiteralArgumentBuilder<ServerCommandSource> pruneCommand = literal("prune");
+        for (boolean dryRun : new boolean[]{true, false}) {
+            pruneCommand.then(literal(dryRun ? "dryrun" : "run")
+                .executes(ctx -> executePrune(ctx.getSource(), TeamCommand.getConfig().pruneInactiveDays, dryRun))
+                .then(argument("days", IntegerArgumentType.integer(1)).executes(ctx -> executePrune(ctx.getSource(),
+                    IntegerArgumentType.getInteger(ctx, "days"), dryRun))));
+        }
+        return pruneCommand;
+    }
+
+    private static LiteralArgumentBuilder<ServerCommandSource> listByCommand() {
+        LiteralArgumentBuilder<ServerCommandSource> byCommand = literal("by");
+        for (GuildListings.Order order : GuildListings.Order.values()) {
+            byCommand.then(literal(order.getName())
+                .executes(timed("list", ctx -> executeListTeams(ctx.getSource(), order, 1)))
+                .then(argument("page", IntegerArgumentType.integer(1)).executes(timed("list", ctx -> executeListTeams(ctx.getSource(),
+                    order, IntegerArgumentType.getInteger(ctx, "page"))))));
+        }
+        return byCommand;
+    }
+
     private static int executeCreate(ServerCommandSource source, String displayName, Formatting color) throws CommandSyntaxException {
         ServerPlayerEntity player = source.getPlayerOrThrow();
         String name = displayName.toLowerCase();
@@ -101,25 +214,21 @@ public class CommandBuilder {
         if (color == Formatting.RESET) color = Formatting.WHITE;
         if (player.getScoreboardTeam() != null) {
             throw ALREADY_IN_TEAM.create();
-        } else if (scoreboard.getTeam(name) != null || duplicateName(scoreboard.getTeams(), name)) {
+        } else if (scoreboard.getTeam(name) != null || duplicateName(displayName)) {
             throw DUPLICATE_NAME.create();
-        } else if (duplicateColor(scoreboard.getTeams(), color)) {
+        } else if (duplicateColor(color)) {
             throw DUPLICATE_COLOR.create();
         }
         Team newTeam = scoreboard.addTeam(name);
-        newTeam.setDisplayName(Text.literal(displayName));
+        Formatting finalColor = color;
+        TeamUpdates.batch(() -> {
+            newTeam.setDisplayName(Text.literal(displayName));
+            newTeam.setColor(finalColor);
+            TeamTags.update(newTeam);
+        });
         scoreboard.addPlayerToTeam(player.getEntityName(), newTeam);
-        newTeam.setColor(color);
-        setPrefix(newTeam);
-        setSuffix(newTeam);
-
-        User user = LuckPermsProvider.get().getUserManager().getUser(player.getUuid());
-        MetaNode metaNode = MetaNode.builder("guild-owner", name).build();
-
-        user.data().clear(NodeType.META.predicate(mn -> mn.getMetaKey().equals("guild-owner")));
-        user.data().add(metaNode);
-
-        LuckPermsProvider.get().getUserManager().saveUser(user);
+        GuildOwners.setOwner(player.getUuid(), name);
+        GuildAudit.record("create", player, name, "", finalColor.getName());
 
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.add.success", newTeam.getFormattedName()), false);
         return 1;
@@ -129,7 +238,6 @@ public class CommandBuilder {
     private static int executeSetDisplayName(ServerCommandSource source, String displayName) throws CommandSyntaxException {
         ServerPlayerEntity player = source.getPlayerOrThrow();
         Team team = (Team) player.getScoreboardTeam();
-        Scoreboard scoreboard = source.getServer().getScoreboard();
 
         if (team == null) {
             throw NOT_IN_TEAM.create();
@@ -137,14 +245,15 @@ public class CommandBuilder {
             throw NOT_GUILD_OWNER.create();
         } else if (team.getDisplayName().getString().equals(displayName)) {
             throw NAME_UNCHANGED.create();
-        } else if (duplicateName(scoreboard.getTeams(), displayName)) {
+        } else if (duplicateName(displayName)) {
             throw DUPLICATE_NAME.create();
         }
 
-        team.setDisplayName(Text.literal(displayName));
-        setPrefix(team);
-        setSuffix(team);
-
+        TeamUpdates.batch(() -> {
+            team.setDisplayName(Text.literal(displayName));
+            TeamTags.update(team);
+        });
+        GuildAudit.record("set_display_name", player, team.getName(), "", displayName);
 
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.option.name.success", team.getFormattedName()), false);
         return 0;
@@ -153,7 +262,6 @@ public class CommandBuilder {
     private static int executeSetColor(ServerCommandSource source, Formatting color) throws CommandSyntaxException {
         ServerPlayerEntity player = source.getPlayerOrThrow();
         Team team = (Team) player.getScoreboardTeam();
-        Scoreboard scoreboard = source.getServer().getScoreboard();
 
         if (color == Formatting.RESET) color = Formatting.WHITE;
         if (team == null) {
@@ -162,15 +270,17 @@ public class CommandBuilder {
             throw NOT_GUILD_OWNER.create();
         } else if (team.getColor().equals(color)) {
             throw COLOR_UNCHANGED.create();
-        } else if (duplicateColor(scoreboard.getTeams(), color)) {
+        } else if (duplicateColor(color)) {
             throw DUPLICATE_COLOR.create();
         }
 
-        team.setColor(color);
-        setPrefix(team);
-        setSuffix(team);
-
         Formatting finalColor = color;
+        TeamUpdates.batch(() -> {
+            team.setColor(finalColor);
+            TeamTags.update(team);
+        });
+        GuildAudit.record("set_color", player, team.getName(), "", finalColor.getName());
+
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.option.color.success", team.getFormattedName(),
             finalColor.getName()), false);
         return 0;
@@ -187,7 +297,8 @@ public class CommandBuilder {
             throw allowed ? FRIENDLY_FIRE_ALREADY_ENABLED.create() :
                 FRIENDLY_FIRE_ALREADY_DISABLED.create();
         }
-        team.setFriendlyFireAllowed(allowed);
+        TeamUpdates.batch(() -> team.setFriendlyFireAllowed(allowed));
+        GuildAudit.record("set_friendly_fire", player, team.getName(), "", String.valueOf(allowed));
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.option.friendlyfire." + (allowed ? "enabled" :
             "disabled"), team.getFormattedName()), false);
         return 0;
@@ -204,7 +315,8 @@ public class CommandBuilder {
             throw allowed ? FRIENDLY_INVISIBLES_ALREADY_ENABLED.create() :
                 OPTION_SEE_FRIENDLY_INVISIBLES_ALREADY_DISABLED_EXCEPTION.create();
         }
-        team.setShowFriendlyInvisibles(allowed);
+        TeamUpdates.batch(() -> team.setShowFriendlyInvisibles(allowed));
+        GuildAudit.record("set_see_invisibles", player, team.getName(), "", String.valueOf(allowed));
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.option.seeFriendlyInvisibles." + (allowed ?
             "enabled" : "disabled"), team.getFormattedName()), false);
         return 0;
@@ -222,42 +334,44 @@ public class CommandBuilder {
             return 0;
         }
 
-        TeamUtil.addInvite(newPlayer, team.getName());
+        TeamUtil.addInvite(newPlayer, team);
+        GuildAudit.record("invite", player, team.getName(), newPlayer.getEntityName(), "");
         TeamUtil.sendToTeammates(player, Text.translatable("commands.teamcmd.teammates.invite",
             player.getDisplayName(), newPlayer.getDisplayName()));
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.invite.success", newPlayer.getDisplayName()), false);
 
+        String acceptCommand = "/" + TeamCommand.getConfig().commandName + " accept " + team.getName();
         Text inviteText =
             Text.translatable("commands.teamcmd.invite", player.getDisplayName(), team.getFormattedName())
                 .formatted(Formatting.GRAY)
                 .styled((style) -> style
-                    .withClickEvent(new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, "/guild accept"))
-                    .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal("/guild accept")))
-                    .withInsertion("/guild accept"));
+                    .withClickEvent(new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, acceptCommand))
+                    .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal(acceptCommand)))
+                    .withInsertion(acceptCommand));
 
 
         newPlayer.sendMessage(inviteText);
         return 0;
     }
 
-    private static int executeAcceptInvite(ServerCommandSource source) throws CommandSyntaxException {
+    private static int executeAcceptInvite(ServerCommandSource source, String requestedTeam) throws CommandSyntaxException {
         ServerPlayerEntity player = source.getPlayerOrThrow();
-        String teamName = TeamUtil.getInvitedTeam(player);
+        Team team = requestedTeam == null ? TeamUtil.getInvitedTeam(player) :
+            player.getScoreboard().getTeam(requestedTeam.toLowerCase());
 
         if (player.getScoreboardTeam() != null) {
             throw ALREADY_IN_TEAM.create();
-        } else if (teamName == null) {
+        } else if (requestedTeam == null && team == null) {
             throw NOT_INVITED.create();
-        }
-
-        Team team = player.getScoreboard().getTeam(teamName);
-        if (team == null) {
-            throw TEAM_NOT_FOUND.create(teamName);
+        } else if (team == null || !TeamUtil.isInvited(player, team)) {
+            // invites to removed guilds are dropped, so an unknown guild is one the player wasn't invited to
+            throw NOT_INVITED_TO.create(requestedTeam);
         }
 
         player.getScoreboard().addPlayerToTeam(player.getEntityName(), team);
+        GuildAudit.record("accept", player, team.getName());
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.joined", team.getFormattedName()), false);
-        TeamUtil.resetInvite(player);
+        TeamUtil.resetInvites(player);
 
         TeamUtil.sendToTeammates(player, Text.translatable("commands.teamcmd.teammates.joined",
             player.getDisplayName()));
@@ -281,44 +395,53 @@ public class CommandBuilder {
 
         // remove them as the owner of the guild (owners are allowed to leave if they are the only member of the guild)
         if (TeamUtil.isOwner(player, team)) {
-            User user = LuckPermsProvider.get().getUserManager().getUser(player.getUuid());
-            user.data().clear(NodeType.META.predicate(mn -> mn.getMetaKey().equals("guild-owner")));
-            LuckPermsProvider.get().getUserManager().saveUser(user);
+            GuildOwners.clearOwner(player.getUuid());
         }
 
         player.getScoreboard().clearPlayerTeam(player.getEntityName());
+        GuildAudit.record("leave", player, team.getName());
         if (team.getPlayerList().size() == 0) {
             player.getScoreboard().removeTeam(team);
+            GuildAudit.record("disband", player, team.getName());
         }
 
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.left", team.getFormattedName()), false);
         return 1;
     }
 
-    private static int executeListMembers(ServerCommandSource source, Team team) {
+    private static int executeListMembers(ServerCommandSource source, Team team, int page) throws CommandSyntaxException {
         Collection<String> collection = team.getPlayerList();
         if (collection.isEmpty()) {
             source.sendFeedback(() -> Text.translatable("commands.teamcmd.list.members.empty", team.getFormattedName()),
                 false);
-        } else {
-            source.sendFeedback(() -> Text.translatable("commands.teamcmd.list.members.success", team.getFormattedName(),
-                collection.size(), Texts.joinOrdered(collection)), false);
+            return 0;
+        }
+
+        Text text = GuildListings.getMembersPage(team, page);
+        if (text == null) {
+            throw PAGE_NOT_FOUND.create((collection.size() + GuildListings.PAGE_SIZE - 1) / GuildListings.PAGE_SIZE);
         }
+        source.sendFeedback(() -> text, false);
         return collection.size();
     }
 
-    private static int executeListTeams(ServerCommandSource source) {
-        Collection<Team> collection = source.getServer().getScoreboard().getTeams();
+    private static int executeListTeams(ServerCommandSource source, GuildListings.Order order, int page) throws CommandSyntaxException {
+        Scoreboard scoreboard = source.getServer().getScoreboard();
+        Collection<Team> collection = scoreboard.getTeams();
         if (collection.isEmpty()) {
             source.sendFeedback(() -> Text.translatable("commands.teamcmd.list.teams.empty"), false);
-        } else {
-            source.sendFeedback(() -> Text.translatable("commands.teamcmd.list.teams.success", collection.size(),
-                Texts.join(collection, Team::getFormattedName)), false);
+            return 0;
+        }
+
+        Text text = GuildListings.getTeamsPage(scoreboard, order, page);
+        if (text == null) {
+            throw PAGE_NOT_FOUND.create(GuildListings.getTeamsPageCount(scoreboard, order));
         }
+        source.sendFeedback(() -> text, false);
         return collection.size();
     }
 
-    private static int executePassOwnership(ServerCommandSource source, ServerPlayerEntity newOwner) throws CommandSyntaxException {
+    private static int executePassOwnership(ServerCommandSource source, String newOwnerName) throws CommandSyntaxException {
 
         ServerPlayerEntity player = source.getPlayerOrThrow();
         Team team = (Team) player.getScoreboardTeam();
@@ -329,28 +452,27 @@ public class CommandBuilder {
             throw NOT_GUILD_OWNER.create();
         }
 
-        if (player == newOwner) {
-            source.sendFeedback(() -> Text.translatable("commands.teamcmd.pass_ownership.yourself"), false);
+        String member = findMember(team, newOwnerName);
+        if (member == null) {
+            source.sendFeedback(() -> Text.translatable("commands.teamcmd.pass_ownership.not_in_team"), false);
             return 0;
         }
 
-        if (newOwner.getScoreboardTeam() == null || !player.getScoreboardTeam().getName().equals(newOwner.getScoreboardTeam().getName())) {
-            source.sendFeedback(() -> Text.translatable("commands.teamcmd.pass_ownership.not_in_team"), false);
+        if (member.equals(player.getEntityName())) {
+            source.sendFeedback(() -> Text.translatable("commands.teamcmd.pass_ownership.yourself"), false);
             return 0;
         }
 
-        // remove owner from old owner
-        User user = LuckPermsProvider.get().getUserManager().getUser(player.getUuid());
-        user.data().clear(NodeType.META.predicate(mn -> mn.getMetaKey().equals("guild-owner")));
-        LuckPermsProvider.get().getUserManager().saveUser(user);
+        UUID newOwner = PlayerDirectory.getUuid(member);
+        if (newOwner == null) {
+            throw UNKNOWN_PLAYER.create(member);
+        }
 
-        // assign the owner meta to the new owner
-        User newOwnerUser = LuckPermsProvider.get().getUserManager().getUser(newOwner.getUuid());
-        MetaNode metaNode = MetaNode.builder("guild-owner", team.getName()).build();
-        newOwnerUser.data().add(metaNode);
-        LuckPermsProvider.get().getUserManager().saveUser(newOwnerUser);
+        // also removes the ownership of the old owner
+        GuildOwners.setOwner(newOwner, team.getName());
+        GuildAudit.record("pass_ownership", player, team.getName(), member, "");
 
-        source.sendFeedback(() -> Text.translatable("commands.teamcmd.pass_ownership.success", player.getName()), false);
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.pass_ownership.success", member), false);
 
         return 1;
     }
@@ -365,38 +487,187 @@ public class CommandBuilder {
             throw NOT_GUILD_OWNER.create();
         }
 
+        int members = team.getPlayerList().size();
         player.getScoreboard().removeTeam(team);
+        GuildAudit.record("disband", player, team.getName(), "", members + " members");
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.disband.success"), false);
 
         return 1;
     }
 
-    private static int executeTeamMsg(ServerCommandSource source, String message) throws CommandSyntaxException {
+    private static int executeAlly(ServerCommandSource source, Team other) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+        Team team = (Team) player.getScoreboardTeam();
+
+        if (team == null) {
+            throw NOT_IN_TEAM.create();
+        } else if (!TeamUtil.isOwner(player, team)) {
+            throw NOT_GUILD_OWNER.create();
+        } else if (team == other) {
+            throw OWN_GUILD.create();
+        } else if (GuildRelations.isAllied(team, other)) {
+            throw ALREADY_ALLIED.create();
+        }
+
+        if (GuildRelations.requestAlliance(team, other)) {
+            GuildAudit.record("ally", player, team.getName(), "", other.getName());
+            TeamUtil.sendToTeam(team, Text.translatable("commands.teamcmd.ally.success", other.getFormattedName()));
+            TeamUtil.sendToTeam(other, Text.translatable("commands.teamcmd.ally.success", team.getFormattedName()));
+            return 1;
+        }
+
+        GuildAudit.record("ally_request", player, team.getName(), "", other.getName());
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.ally.requested", other.getFormattedName()), false);
+        String acceptCommand = "/" + TeamCommand.getConfig().commandName + " ally " + team.getName();
+        TeamUtil.sendToTeam(other, Text.translatable("commands.teamcmd.ally.request", team.getFormattedName())
+            .formatted(Formatting.GRAY)
+            .styled(style -> style
+                .withClickEvent(new ClickEvent(ClickEvent.Action.SUGGEST_COMMAND, acceptCommand))
+                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal(acceptCommand)))));
+        return 0;
+    }
+
+    private static int executeEnemy(ServerCommandSource source, Team other) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+        Team team = (Team) player.getScoreboardTeam();
+
+        if (team == null) {
+            throw NOT_IN_TEAM.create();
+        } else if (!TeamUtil.isOwner(player, team)) {
+            throw NOT_GUILD_OWNER.create();
+        } else if (team == other) {
+            throw OWN_GUILD.create();
+        } else if (GuildRelations.isEnemy(team, other)) {
+            throw ALREADY_ENEMY.create();
+        }
+
+        GuildRelations.declareEnemy(team, other);
+        GuildAudit.record("enemy", player, team.getName(), "", other.getName());
+        TeamUtil.sendToTeam(team, Text.translatable("commands.teamcmd.enemy.success", other.getFormattedName()));
+        TeamUtil.sendToTeam(other, Text.translatable("commands.teamcmd.enemy.declared", team.getFormattedName()));
+        return 1;
+    }
+
+    private static int executeNeutral(ServerCommandSource source, Team other) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+        Team team = (Team) player.getScoreboardTeam();
+
+        if (team == null) {
+            throw NOT_IN_TEAM.create();
+        } else if (!TeamUtil.isOwner(player, team)) {
+            throw NOT_GUILD_OWNER.create();
+        } else if (team == other) {
+            throw OWN_GUILD.create();
+        }
+
+        boolean wasAllied = GuildRelations.isAllied(team, other);
+        if (!GuildRelations.makeNeutral(team, other)) {
+            throw ALREADY_NEUTRAL.create();
+        }
+        GuildAudit.record("neutral", player, team.getName(), "", other.getName());
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.neutral.success", other.getFormattedName()), false);
+        if (wasAllied) {
+            TeamUtil.sendToTeam(other, Text.translatable("commands.teamcmd.ally.ended", team.getFormattedName()));
+        }
+        return 1;
+    }
+
+    private static int executeRelations(ServerCommandSource source) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+        Team team = (Team) player.getScoreboardTeam();
+        if (team == null) {
+            throw NOT_IN_TEAM.create();
+        }
+
+        List<Team> allies = GuildRelations.getAllies(team);
+        List<Team> enemies = GuildRelations.getEnemies(team);
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.relations", team.getFormattedName(),
+            allies.isEmpty() ? Text.translatable("commands.teamcmd.relations.none") : Texts.join(allies, Team::getFormattedName),
+            enemies.isEmpty() ? Text.translatable("commands.teamcmd.relations.none") : Texts.join(enemies, Team::getFormattedName)),
+            false);
+        return allies.size();
+    }
+
+    private static int executeSetAllianceChat(ServerCommandSource source, boolean enabled) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+        Team team = (Team) player.getScoreboardTeam();
+        if (team == null) {
+            throw NOT_IN_TEAM.create();
+        } else if (!TeamUtil.isOwner(player, team)) {
+            throw NOT_GUILD_OWNER.create();
+        } else if (GuildRelations.isAllianceChatEnabled(team) == enabled) {
+            throw enabled ? ALLIANCE_CHAT_ALREADY_ENABLED.create() : ALLIANCE_CHAT_ALREADY_DISABLED.create();
+        }
+        GuildRelations.setAllianceChat(team, enabled);
+        GuildAudit.record("set_alliance_chat", player, team.getName(), "", String.valueOf(enabled));
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.option.allianceChat." + (enabled ? "enabled" :
+            "disabled"), team.getFormattedName()), false);
+        return 0;
+    }
+
+    private static int executeAllianceMsg(ServerCommandSource source, String message) throws CommandSyntaxException {
         ServerPlayerEntity player = source.getPlayerOrThrow();
 
         if (player.getScoreboardTeam() == null) {
             throw NOT_IN_TEAM.create();
+        } else if (!GuildRelations.isAllianceChatEnabled(player.getScoreboardTeam())) {
+            throw ALLIANCE_CHAT_DISABLED.create();
+        } else if (!GuildChatLimits.tryAcquire(GuildSessions.getOrCreate(player.getUuid()), player.getScoreboardTeam())) {
+            throw CHAT_THROTTLED.create();
         }
 
-        MutableText text = TeamUtil.getGuildChatFormat(player, message);
+        TeamUtil.sendAllianceChat(player, message);
+        return 1;
+    }
+
+    private static int executeTeamMsg(ServerCommandSource source, String message) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+
+        if (player.getScoreboardTeam() == null) {
+            throw NOT_IN_TEAM.create();
+        } else if (!GuildChatLimits.tryAcquire(GuildSessions.getOrCreate(player.getUuid()), player.getScoreboardTeam())) {
+            throw CHAT_THROTTLED.create();
+        }
 
-        // Send to yourself as well
-        player.sendMessage(text.formatted(player.getScoreboardTeam().getColor()), false);
-        TeamUtil.sendToTeammates(player, text);
+        TeamUtil.sendGuildChat(player, message);
 
         return 1;
     }
 
     private static int executeTeamChatToggle(ServerCommandSource source) throws CommandSyntaxException {
-        UUID uuid = source.getPlayerOrThrow().getUuid();
-        boolean currentStatus = !TeamUtil.guildChatToggleMap.computeIfAbsent(uuid, u -> false);
-        TeamUtil.guildChatToggleMap.put(uuid, currentStatus);
+        GuildSession session = GuildSessions.getOrCreate(source.getPlayerOrThrow().getUuid());
+        boolean currentStatus = !session.isGuildChat();
+        session.setGuildChat(currentStatus);
 
         source.sendFeedback(() -> Text.translatable("commands.teamcmd.guildchat.toggle", currentStatus ? "ON" : "OFF"), false);
         return 1;
     }
 
-    private static int executeTeamKick(ServerCommandSource source, ServerPlayerEntity playerToKick) throws CommandSyntaxException {
+    private static int executeChatHistory(ServerCommandSource source, int page) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+        Team team = (Team) player.getScoreboardTeam();
+        if (team == null) {
+            throw NOT_IN_TEAM.create();
+        }
+
+        int pageCount = GuildChatHistory.getPageCount(team);
+        if (pageCount == 0) {
+            source.sendFeedback(() -> Text.translatable("commands.teamcmd.guildchat.history.empty"), false);
+            return 0;
+        } else if (page > pageCount) {
+            throw PAGE_NOT_FOUND.create(pageCount);
+        }
+
+        MutableText text = Text.translatable("commands.teamcmd.guildchat.history", page, pageCount)
+            .formatted(Formatting.GRAY);
+        for (Text line : GuildChatHistory.getPage(team, page)) {
+            text.append("\n").append(line);
+        }
+        source.sendFeedback(() -> text, false);
+        return pageCount;
+    }
+
+    private static int executeTeamKick(ServerCommandSource source, String playerName) throws CommandSyntaxException {
         ServerPlayerEntity player = source.getPlayerOrThrow();
         Team team = (Team) player.getScoreboardTeam();
 
@@ -404,69 +675,127 @@ public class CommandBuilder {
             throw NOT_IN_TEAM.create();
         } else if (!TeamUtil.isOwner(player, team)) {
             throw NOT_GUILD_OWNER.create();
-        } else if (player.getScoreboardTeam() != playerToKick.getScoreboardTeam()) {
-            source.sendFeedback(() -> Text.translatable("commands.teamcmd.kick.not_in_team", playerToKick.getName()), false);
+        }
+
+        String member = findMember(team, playerName);
+        if (member == null) {
+            source.sendFeedback(() -> Text.translatable("commands.teamcmd.kick.not_in_team", playerName), false);
             return 0;
-        } else if (player == playerToKick) {
+        } else if (member.equals(player.getEntityName())) {
             source.sendFeedback(() -> Text.translatable("commands.teamcmd.kick.yourself"), false);
             return 0;
         }
 
-        Team playerToKickTeam = (Team) playerToKick.getScoreboardTeam();
-        playerToKick.getScoreboard().removePlayerFromTeam(playerToKick.getName().getString(), playerToKickTeam);
-        source.sendFeedback(() -> Text.translatable("commands.teamcmd.kick.success", playerToKick.getName()), false);
+        // works for offline members too, they are only an entry on the scoreboard
+        player.getScoreboard().removePlayerFromTeam(member, team);
+        GuildAudit.record("kick", player, team.getName(), member, "");
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.kick.success", member), false);
+
+        return 1;
+    }
 
+    private static int executeFind(ServerCommandSource source, String playerName) {
+        PlayerDirectory.Entry entry = PlayerDirectory.find(playerName);
+        String name = entry == null ? playerName : entry.name();
+        Team team = source.getServer().getScoreboard().getPlayerTeam(name);
+        if (team == null) {
+            source.sendFeedback(() -> Text.translatable("commands.teamcmd.find.none", name), false);
+            return 0;
+        }
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.find.success", name, team.getFormattedName()),
+            false);
         return 1;
     }
 
-    private static boolean duplicateName(Collection<Team> teams, String name) {
-        return !TeamCommand.CONFIG.allowDuplicateDisplaynames && teams.stream().anyMatch(other -> other
-            .getDisplayName()
-            .getString()
-            .equalsIgnoreCase(name));
+    private static int executeVerifyRoster(ServerCommandSource source) {
+        int drift = GuildRoster.verify(source.getServer());
+        if (drift == 0) {
+            source.sendFeedback(() -> Text.translatable("commands.teamcmd.admin.roster.ok", GuildRoster.size(),
+                GuildRoster.teamCount()), false);
+        } else {
+            source.sendFeedback(() -> Text.translatable("commands.teamcmd.admin.roster.drift", drift), true);
+        }
+        return drift;
     }
 
-    private static boolean duplicateColor(Collection<Team> teams, Formatting color) {
-        return !TeamCommand.CONFIG.allowDuplicateColors && teams.stream().anyMatch(other -> other
-            .getColor()
-            .equals(color));
+    private static int executeReload(ServerCommandSource source) throws CommandSyntaxException {
+        try {
+            TeamCommand.reloadConfig();
+        } catch (RuntimeException ex) {
+            throw RELOAD_FAILED.create(ex.getMessage());
+        }
+        int count = TeamTags.scheduleRefresh(source.getServer());
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.admin.reload", count), true);
+        return count;
     }
 
+    private static int executePrune(ServerCommandSource source, int inactiveDays, boolean dryRun) throws CommandSyntaxException {
+        int count = GuildMaintenance.start(source.getServer(), inactiveDays, dryRun, report -> {
+            MutableText text = Text.translatable("commands.teamcmd.admin.prune." + (dryRun ? "preview" : "done"),
+                report.checked(), report.disbanded().size(), report.removedMembers(), report.passedOwnerships(),
+                report.ticks());
+            if (!report.disbanded().isEmpty()) {
+                List<String> names = report.disbanded().subList(0, Math.min(PRUNE_REPORT_SIZE, report.disbanded().size()));
+                text.append("\n").append(Text.translatable("commands.teamcmd.admin.prune.disbanded",
+                    String.join(", ", names) + (report.disbanded().size() > names.size() ? ", ..." : "")));
+            }
+            source.sendFeedback(() -> text, !dryRun);
+        });
+        if (count < 0) {
+            throw PRUNE_RUNNING.create();
+        }
+        source.sendFeedback(() -> Text.translatable("commands.teamcmd.admin.prune.started", count, inactiveDays), false);
+        return count;
+    }
 
-    private static void setPrefix(Team team) {
-        Formatting teamColor = team.getColor();
-        team.setPrefix(
-            Text.literal(String.format(TeamCommand.CONFIG.prefixFormat, team.getDisplayName().getString()))
-                .formatted(TeamCommand.CONFIG.prefixUseTeamColor ? teamColor : getSecondaryColor(teamColor)));
+    private static int executeAudit(ServerCommandSource source, String key, String name, int page) {
+        // the lookup reads from disk, the result is sent from the server thread once it is done
+        GuildAudit.query(key, page, AUDIT_PAGE_SIZE).whenComplete((result, error) -> source.getServer().execute(() -> {
+            if (error != null) {
+                source.sendError(Text.translatable("commands.teamcmd.admin.audit.failed", name));
+                return;
+            }
+            int pageCount = (result.total() + AUDIT_PAGE_SIZE - 1) / AUDIT_PAGE_SIZE;
+            if (result.total() == 0) {
+                source.sendFeedback(() -> Text.translatable("commands.teamcmd.admin.audit.empty", name), false);
+                return;
+            } else if (result.complete() && page > pageCount) {
+                source.sendError(Text.translatable("commands.teamcmd.fail.no_page", pageCount));
+                return;
+            }
+            // a partial result stops at the page after the requested one, older files were not looked at
+            MutableText text = result.complete() ?
+                Text.translatable("commands.teamcmd.admin.audit", name, result.total(), page, pageCount) :
+                Text.translatable("commands.teamcmd.admin.audit.partial", name, page);
+            for (AuditEntry entry : result.entries()) {
+                text.append("\n").append(Text.translatable("commands.teamcmd.admin.audit.entry",
+                    AUDIT_TIME_FORMAT.format(Instant.ofEpochMilli(entry.time())), entry.actor(), entry.action(),
+                    entry.guild(), entry.target(), entry.detail()).formatted(Formatting.GRAY));
+            }
+            source.sendFeedback(() -> text, false);
+        }));
+        return 1;
     }
 
-    private static void setSuffix(Team team) {
-        Formatting teamColor = team.getColor();
-        team.setSuffix(
-            Text.literal(String.format(TeamCommand.CONFIG.suffixFormat, team.getDisplayName().getString()))
-                .formatted(TeamCommand.CONFIG.suffixUseTeamColor ? teamColor : getSecondaryColor(teamColor)));
+    private static int executeStats(ServerCommandSource source) {
+        source.sendFeedback(() -> GuildMetrics.report(TeamUtil.getQueuedInvites(), GuildOwners.getQueueDepth()), false);
+        return 1;
     }
 
-    private static Formatting getSecondaryColor(Formatting primary) {
-        Formatting secondary = Formatting.RESET;
-        switch (primary) {
-            case AQUA -> secondary = Formatting.DARK_AQUA;
-            case DARK_AQUA -> secondary = Formatting.AQUA;
-            case BLUE -> secondary = Formatting.DARK_BLUE;
-            case DARK_BLUE -> secondary = Formatting.BLUE;
-            case WHITE -> secondary = Formatting.GRAY;
-            case GRAY -> secondary = Formatting.WHITE;
-            case DARK_GRAY -> secondary = Formatting.BLACK;
-            case BLACK -> secondary = Formatting.DARK_GRAY;
-            case RED -> secondary = Formatting.DARK_RED;
-            case DARK_RED -> secondary = Formatting.RED;
-            case GREEN -> secondary = Formatting.DARK_GREEN;
-            case DARK_GREEN -> secondary = Formatting.GREEN;
-            case LIGHT_PURPLE -> secondary = Formatting.DARK_PURPLE;
-            case DARK_PURPLE -> secondary = Formatting.LIGHT_PURPLE;
-            case YELLOW -> secondary = Formatting.GOLD;
-            case GOLD -> secondary = Formatting.YELLOW;
-        }
-        return secondary;
+    /**
+     * @return the scoreboard entry of the member with that name in any case or {@code null}
+     */
+    private static String findMember(Team team, String playerName) {
+        PlayerDirectory.Entry entry = PlayerDirectory.find(playerName);
+        String name = entry == null ? playerName : entry.name();
+        return team.getPlayerList().contains(name) ? name : null;
+    }
+
+    private static boolean duplicateName(String name) {
+        return !TeamCommand.getConfig().allowDuplicateDisplaynames && GuildNameIndex.containsDisplayName(name);
+    }
+
+    private static boolean duplicateColor(Formatting color) {
+        return !TeamCommand.getConfig().allowDuplicateColors && GuildNameIndex.isColorUsed(color);
     }
 }
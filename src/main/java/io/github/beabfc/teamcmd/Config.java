@@ -5,6 +5,11 @@ import com.moandjiezana.toml.TomlWriter;
 import net.fabricmc.loader.api.FabricLoader;
 
 import java.io.File;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 
 public class Config {
@@ -15,15 +20,54 @@ public class Config {
     public boolean prefixUseTeamColor = false;
     public String suffixFormat = " (%.5s) ";
     public boolean suffixUseTeamColor = true;
+    public int tagRefreshBudgetMicros = 2000;
+    public int chatMessagesPerMinute = 40;
+    public int chatBurst = 8;
+    public int guildChatMessagesPerMinute = 200;
+    public int guildChatBurst = 20;
+    public int chatHistorySize = 50;
+    public int chatHistoryReplay = 10;
+    public boolean chatHistoryPersist = false;
+    public boolean relayEnabled = false;
+    public String relayServerId = "";
+    public String relayHost = "127.0.0.1";
+    public int relayPort = 25580;
+    public List<String> relayPeers = new ArrayList<>();
+    public int relayQueueSize = 1024;
+    public int pruneInactiveDays = 90;
+    public boolean autoPrune = false;
+    public int maintenanceBudgetMicros = 1000;
 
+    private transient TagTemplate prefixTemplate;
+    private transient TagTemplate suffixTemplate;
+
+    public TagTemplate getPrefixTemplate() {
+        return this.prefixTemplate;
+    }
+
+    public TagTemplate getSuffixTemplate() {
+        return this.suffixTemplate;
+    }
 
     public static Config load(String configName) {
         try {
             File configFile = FabricLoader.getInstance().getConfigDir().resolve(configName).toFile();
             //noinspection ResultOfMethodCallIgnored
             configFile.createNewFile();
-            Config config = new Toml().read(configFile).to(Config.class);
-            new TomlWriter().write(config, configFile);
+            Toml toml = new Toml().read(configFile);
+            Config config = toml.to(Config.class);
+            config.prefixTemplate = TagTemplate.compile(config.prefixFormat);
+            config.suffixTemplate = TagTemplate.compile(config.suffixFormat);
+            config.maintenanceBudgetMicros = Math.max(1, config.maintenanceBudgetMicros);
+
+            // only write the file back if options were missing from it, rewriting drops the comments of the admin
+            Set<String> keys = toml.toMap().keySet();
+            boolean missing = Arrays.stream(Config.class.getFields())
+                .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                .anyMatch(field -> !keys.contains(field.getName()));
+            if (missing) {
+                new TomlWriter().write(config, configFile);
+            }
             return config;
         } catch (Exception ex) {
             throw new RuntimeException(ex);
@@ -0,0 +1,139 @@
+package io.github.beabfc.teamcmd;
+
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import net.minecraft.util.Util;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static net.minecraft.server.command.CommandManager.argument;
+
+/**
+ * Command argument for a guild. The client only knows vanilla argument types, so the argument itself is a plain word;
+ * suggestions come from a sorted index of guild names and display names that is queried off the server thread. A
+ * query looks at no more than {@link #MAX_SCANNED} names in alphabetical order, however short the typed prefix is, and
+ * returns the best {@link #MAX_SUGGESTIONS} of them.
+ */
+public abstract class GuildArgument {
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int MAX_SCANNED = 256;
+    private static final char SEPARATOR = '\0';
+    private static final DynamicCommandExceptionType TEAM_NOT_FOUND =
+        new DynamicCommandExceptionType(option -> Text.translatable("team.notFound", option));
+
+    // keys are "<lowercase name or display name>\0<team name>", so a prefix query is a range of the map
+    private static final ConcurrentSkipListMap<String, Match> index = new ConcurrentSkipListMap<>();
+    private static final Map<String, String> indexedDisplayNames = new HashMap<>();
+
+    public static final SuggestionProvider<ServerCommandSource> SUGGESTIONS = (ctx, builder) -> suggest(builder);
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            index.clear();
+            indexedDisplayNames.clear();
+        });
+    }
+
+    public static RequiredArgumentBuilder<ServerCommandSource, String> guild(String name) {
+        return argument(name, StringArgumentType.word()).suggests(SUGGESTIONS);
+    }
+
+    public static Team getGuild(CommandContext<ServerCommandSource> ctx, String name) throws CommandSyntaxException {
+        String teamName = StringArgumentType.getString(ctx, name);
+        Team team = ctx.getSource().getServer().getScoreboard().getTeam(teamName);
+        if (team == null) team = ctx.getSource().getServer().getScoreboard().getTeam(teamName.toLowerCase(Locale.ROOT));
+        if (team == null) throw TEAM_NOT_FOUND.create(teamName);
+        return team;
+    }
+
+    public static void onTeamUpdated(Team team) {
+        String name = normalize(team.getName());
+        String displayName = normalize(team.getDisplayName().getString());
+        String previous = indexedDisplayNames.put(team.getName(), displayName);
+        if (displayName.equals(previous)) return;
+
+        if (previous == null) {
+            index.put(key(name, team.getName()), new Match(team.getName(), null));
+        } else if (!previous.equals(name)) {
+            index.remove(key(previous, team.getName()));
+        }
+        if (!displayName.equals(name)) {
+            index.put(key(displayName, team.getName()), new Match(team.getName(), team.getDisplayName().getString()));
+        }
+    }
+
+    public static void onTeamRemoved(Team team) {
+        String displayName = indexedDisplayNames.remove(team.getName());
+        if (displayName == null) return;
+        index.remove(key(normalize(team.getName()), team.getName()));
+        index.remove(key(displayName, team.getName()));
+    }
+
+    private static CompletableFuture<Suggestions> suggest(SuggestionsBuilder builder) {
+        String prefix = normalize(builder.getRemaining());
+        return CompletableFuture.supplyAsync(() -> {
+            // exact matches first, then matches on the team name, then the shortest display names. Exact matches
+            // sort first in the index, so they are never cut off by the limit
+            Map<String, Match> best = new HashMap<>();
+            int scanned = 0;
+            for (Map.Entry<String, Match> entry : index.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+                if (++scanned > MAX_SCANNED) break;
+                Match match = entry.getValue();
+                int length = entry.getKey().indexOf(SEPARATOR);
+                Match ranked = new Match(match.teamName(), match.displayName(),
+                    (length == prefix.length() ? 0 : 2) + (match.displayName() == null ? 0 : 1), length);
+                best.merge(match.teamName(), ranked, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+
+            PriorityQueue<Match> top = new PriorityQueue<>(Comparator.reverseOrder());
+            for (Match match : best.values()) {
+                top.add(match);
+                if (top.size() > MAX_SUGGESTIONS) top.poll();
+            }
+            List<Match> sorted = new ArrayList<>(top);
+            Collections.sort(sorted);
+            for (Match match : sorted) {
+                if (match.displayName() == null) {
+                    builder.suggest(match.teamName());
+                } else {
+                    builder.suggest(match.teamName(), Text.literal(match.displayName()));
+                }
+            }
+            return builder.build();
+        }, Util.getMainWorkerExecutor());
+    }
+
+    private static String key(String term, String teamName) {
+        return term + SEPARATOR + teamName;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private record Match(String teamName, String displayName, int rank, int length) implements Comparable<Match> {
+
+        private Match(String teamName, String displayName) {
+            this(teamName, displayName, 0, 0);
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            if (this.rank != other.rank) return Integer.compare(this.rank, other.rank);
+            if (this.length != other.length) return Integer.compare(this.length, other.length);
+            return this.teamName.compareTo(other.teamName);
+        }
+    }
+}
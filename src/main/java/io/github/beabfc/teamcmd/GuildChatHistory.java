@@ -0,0 +1,260 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.scoreboard.AbstractTeam;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.WorldSavePath;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The most recent guild chat messages of every guild. Each guild has a ring buffer with a fixed number of slots that
+ * hold encoded entries instead of text components, so the memory used per guild is bounded by the size of the buffer
+ * and the length of a chat message. If enabled, the buffers are written to the world folder in the background.
+ */
+public abstract class GuildChatHistory {
+    private static final Logger LOGGER = LogManager.getLogger();
+    public static final int PAGE_SIZE = 10;
+    private static final int SAVE_INTERVAL = 600;
+    private static final int MAGIC = 0x54434831;
+    private static final String FILE = "teamcmd/chat-history.dat";
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm")
+        .withZone(ZoneId.systemDefault());
+
+    // keyed by guild id
+    private static final Int2ObjectOpenHashMap<Ring> rings = new Int2ObjectOpenHashMap<>();
+    private static ExecutorService writer;
+    private static boolean dirty;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(GuildChatHistory::load);
+        ServerLifecycleEvents.SERVER_STOPPING.register(GuildChatHistory::close);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> rings.clear());
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (dirty && server.getTicks() % SAVE_INTERVAL == 0) save(server);
+        });
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> replay(handler.player));
+    }
+
+    /**
+     * @param alliance the guild of the sender if it was an alliance chat message, otherwise {@code null}
+     */
+    public static void record(AbstractTeam team, Team alliance, String senderName, String message) {
+        int capacity = TeamCommand.getConfig().chatHistorySize;
+        if (capacity <= 0) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length() + senderName.length() + 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(senderName);
+            out.writeUTF(message);
+            // last, so entries saved before alliances existed can still be read
+            out.writeUTF(alliance == null ? "" : alliance.getName());
+        } catch (IOException ex) {
+            LOGGER.error("Could not record guild chat message", ex);
+            return;
+        }
+        int teamId = GuildRegistry.getId(team);
+        if (teamId == GuildRegistry.NO_ID) return;
+        rings.computeIfAbsent(teamId, id -> new Ring(capacity)).add(bytes.toByteArray(), capacity);
+        dirty = true;
+    }
+
+    public static int getPageCount(AbstractTeam team) {
+        Ring ring = rings.get(GuildRegistry.getId(team));
+        return ring == null ? 0 : (ring.size + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * @param page starting with the most recent messages at page 1
+     * @return the messages of the page, oldest first
+     */
+    public static List<Text> getPage(Team team, int page) {
+        Ring ring = rings.get(GuildRegistry.getId(team));
+        if (ring == null) return Collections.emptyList();
+        int newest = (page - 1) * PAGE_SIZE;
+        int oldest = Math.min(newest + PAGE_SIZE, ring.size) - 1;
+        List<Text> lines = new ArrayList<>();
+        for (int age = oldest; age >= newest; age--) {
+            lines.add(render(team, ring.get(age)));
+        }
+        return lines;
+    }
+
+    public static void onTeamRemoved(Team team) {
+        if (rings.remove(GuildRegistry.getId(team)) != null) dirty = true;
+    }
+
+    private static void replay(ServerPlayerEntity player) {
+        int lines = TeamCommand.getConfig().chatHistoryReplay;
+        Team team = player.getScoreboard().getPlayerTeam(player.getEntityName());
+        Ring ring = rings.get(GuildRegistry.getId(team));
+        if (lines <= 0 || ring == null || ring.size == 0) return;
+
+        player.sendMessage(Text.translatable("commands.teamcmd.guildchat.replay", team.getFormattedName())
+            .formatted(Formatting.GRAY));
+        for (int age = Math.min(lines, ring.size) - 1; age >= 0; age--) {
+            player.sendMessage(render(team, ring.get(age)));
+        }
+    }
+
+    private static Text render(Team team, byte[] entry) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+            String time = TIME_FORMAT.format(Instant.ofEpochMilli(in.readLong()));
+            Text senderName = Text.literal(in.readUTF());
+            String message = in.readUTF();
+            String allianceName = in.available() > 0 ? in.readUTF() : "";
+            MutableText line = Text.literal("[" + time + "] ").formatted(Formatting.DARK_GRAY);
+            if (allianceName.isEmpty()) {
+                return line.append(TeamUtil.getGuildChatFormat(senderName, team.getColor(), message));
+            }
+            // the guild of the sender may have been disbanded since
+            Team alliance = team.getScoreboard().getTeam(allianceName);
+            return line.append(alliance != null ? TeamUtil.getAllianceChatFormat(alliance, senderName, message) :
+                TeamUtil.getAllianceChatFormat(Text.literal(allianceName), Formatting.GRAY, senderName, message));
+        } catch (IOException ex) {
+            return Text.literal("?").formatted(Formatting.DARK_GRAY);
+        }
+    }
+
+    private static void load(MinecraftServer server) {
+        if (!TeamCommand.getConfig().chatHistoryPersist) return;
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TeamCommand Chat History");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Path file = server.getSavePath(WorldSavePath.ROOT).resolve(FILE);
+        int capacity = TeamCommand.getConfig().chatHistorySize;
+        if (capacity <= 0 || !Files.exists(file)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a guild chat history file");
+            int guilds = in.readInt();
+            for (int i = 0; i < guilds; i++) {
+                String teamName = in.readUTF();
+                int count = in.readInt();
+                Ring ring = new Ring(capacity);
+                for (int j = 0; j < count; j++) {
+                    byte[] entry = new byte[in.readInt()];
+                    in.readFully(entry);
+                    ring.add(entry, capacity);
+                }
+                int teamId = GuildRegistry.getId(teamName);
+                if (teamId != GuildRegistry.NO_ID) rings.put(teamId, ring);
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Could not load the guild chat history", ex);
+        }
+    }
+
+    private static void save(MinecraftServer server) {
+        dirty = false;
+        if (writer == null) return;
+
+        // entries are never modified, copying the references is enough for a consistent snapshot
+        Map<String, List<byte[]>> snapshot = new HashMap<>();
+        rings.int2ObjectEntrySet().fastForEach(entry -> {
+            Ring ring = entry.getValue();
+            List<byte[]> entries = new ArrayList<>(ring.size);
+            for (int age = ring.size - 1; age >= 0; age--) {
+                entries.add(ring.get(age));
+            }
+            snapshot.put(GuildRegistry.getTeam(entry.getIntKey()).getName(), entries);
+        });
+        Path file = server.getSavePath(WorldSavePath.ROOT).resolve(FILE);
+        writer.execute(() -> write(file, snapshot));
+    }
+
+    private static void write(Path file, Map<String, List<byte[]>> snapshot) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, List<byte[]>> guild : snapshot.entrySet()) {
+                    out.writeUTF(guild.getKey());
+                    out.writeInt(guild.getValue().size());
+                    for (byte[] entry : guild.getValue()) {
+                        out.writeInt(entry.length);
+                        out.write(entry);
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOGGER.error("Could not save the guild chat history", ex);
+        }
+    }
+
+    private static void close(MinecraftServer server) {
+        if (writer == null) return;
+        if (dirty) save(server);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.error("Timed out while saving the guild chat history");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    private static class Ring {
+        private byte[][] entries;
+        private int head;
+        private int size;
+
+        private Ring(int capacity) {
+            this.entries = new byte[capacity][];
+        }
+
+        private void add(byte[] entry, int capacity) {
+            if (capacity != this.entries.length) resize(capacity);
+            this.entries[this.head] = entry;
+            this.head = (this.head + 1) % this.entries.length;
+            this.size = Math.min(this.size + 1, this.entries.length);
+        }
+
+        /**
+         * @param age {@code 0} for the most recent entry
+         */
+        private byte[] get(int age) {
+            return this.entries[Math.floorMod(this.head - 1 - age, this.entries.length)];
+        }
+
+        // the size can change with a config reload, the most recent entries are kept
+        private void resize(int capacity) {
+            byte[][] resized = new byte[capacity][];
+            int kept = Math.min(this.size, capacity);
+            for (int age = kept - 1; age >= 0; age--) {
+                resized[kept - 1 - age] = get(age);
+            }
+            this.entries = resized;
+            this.head = kept % capacity;
+            this.size = kept;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.beabfc.teamcmd;
+
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.scoreboard.AbstractTeam;
+import net.minecraft.scoreboard.Team;
+
+import java.util.Arrays;
+
+/**
+ * Rate limits for guild chat. Every message is multiplied by the size of the guild, so both the sender and the guild
+ * as a whole have a budget. Safe to call from the network threads.
+ */
+public abstract class GuildChatLimits {
+    // indexed by guild id, replaced as a whole on the server thread so the network threads only ever read it
+    private static volatile TokenBucket[] guildBuckets = new TokenBucket[0];
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> guildBuckets = new TokenBucket[0]);
+    }
+
+    /**
+     * @return whether the message may be sent, throttled messages are counted in the metrics
+     */
+    public static boolean tryAcquire(GuildSession session, AbstractTeam team) {
+        Config config = TeamCommand.getConfig();
+        long now = System.nanoTime();
+        if (!session.chatBucket.tryAcquire(now, config.chatMessagesPerMinute, config.chatBurst)) {
+            GuildMetrics.recordChatThrottled(false);
+            return false;
+        }
+        if (!tryAcquireGuild(team, config, now)) {
+            // the sender is not charged for the volume of their guildmates
+            session.chatBucket.refund(config.chatMessagesPerMinute);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Charges a guild that receives a message sent by a member of another guild, like an alliance chat message.
+     *
+     * @return whether the guild may receive the message
+     */
+    public static boolean tryAcquireGuild(AbstractTeam team) {
+        return tryAcquireGuild(team, TeamCommand.getConfig(), System.nanoTime());
+    }
+
+    private static boolean tryAcquireGuild(AbstractTeam team, Config config, long now) {
+        TokenBucket[] buckets = guildBuckets;
+        int id = GuildRegistry.getId(team);
+        TokenBucket guildBucket = id >= 0 && id < buckets.length ? buckets[id] : null;
+        if (guildBucket != null
+            && !guildBucket.tryAcquire(now, config.guildChatMessagesPerMinute, config.guildChatBurst)) {
+            GuildMetrics.recordChatThrottled(true);
+            return false;
+        }
+        return true;
+    }
+
+    public static void onTeamAdded(Team team) {
+        int id = GuildRegistry.getId(team);
+        TokenBucket[] buckets = Arrays.copyOf(guildBuckets, Math.max(guildBuckets.length, id + 1));
+        buckets[id] = new TokenBucket();
+        guildBuckets = buckets;
+    }
+
+    public static void onTeamRemoved(Team team) {
+        int id = GuildRegistry.getId(team);
+        if (id < 0 || id >= guildBuckets.length) return;
+        TokenBucket[] buckets = guildBuckets.clone();
+        buckets[id] = null;
+        guildBuckets = buckets;
+    }
+}
@@ -0,0 +1,11 @@
+package io.github.beabfc.teamcmd;
+
+/**
+ * Implemented by every {@link net.minecraft.scoreboard.Team} through a mixin, holds the id assigned by the
+ * {@link GuildRegistry}.
+ */
+public interface GuildIdHolder {
+    int teamcmd$getGuildId();
+
+    void teamcmd$setGuildId(int id);
+}
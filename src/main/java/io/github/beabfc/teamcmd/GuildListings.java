@@ -0,0 +1,221 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+import net.minecraft.text.Texts;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Rendered pages of the guild and member listings. Each sort order keeps its guilds sorted and is only built on the
+ * first request; afterwards a change to a guild moves it to its new position and drops the pages between the old and
+ * the new one, every other page is served from the cache.
+ */
+public abstract class GuildListings {
+    public static final int PAGE_SIZE = 10;
+
+    private static final EnumMap<Order, Listing> listings = new EnumMap<>(Order.class);
+    private static final Int2ObjectOpenHashMap<Text[]> memberPages = new Int2ObjectOpenHashMap<>();
+
+    static {
+        for (Order order : Order.values()) {
+            listings.put(order, new Listing(order.key));
+        }
+    }
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+    }
+
+    /**
+     * @return the rendered page or {@code null} if there is no such page
+     */
+    public static Text getTeamsPage(Scoreboard scoreboard, Order order, int page) {
+        Listing listing = listings.get(order);
+        listing.build(scoreboard);
+        return listing.getPage(order, page);
+    }
+
+    public static int getTeamsPageCount(Scoreboard scoreboard, Order order) {
+        Listing listing = listings.get(order);
+        listing.build(scoreboard);
+        return listing.getPageCount();
+    }
+
+    public static Text getMembersPage(Team team, int page) {
+        Text[] pages = memberPages.get(GuildRegistry.getId(team));
+        int pageCount = pageCount(team.getPlayerList().size());
+        if (pages == null || pages.length != pageCount) {
+            pages = new Text[pageCount];
+            memberPages.put(GuildRegistry.getId(team), pages);
+        }
+        if (page < 1 || page > pageCount) return null;
+
+        if (pages[page - 1] == null) {
+            List<String> members = new ArrayList<>(team.getPlayerList());
+            members.sort(String.CASE_INSENSITIVE_ORDER);
+            List<String> entries = members.subList((page - 1) * PAGE_SIZE,
+                Math.min(page * PAGE_SIZE, members.size()));
+            pages[page - 1] = Text.translatable("commands.teamcmd.list.members.page", team.getFormattedName(),
+                members.size(), page, pageCount, Texts.joinOrdered(entries));
+        }
+        return pages[page - 1];
+    }
+
+    /**
+     * Called whenever anything that is shown in or sorted by changes, including members joining, leaving or going
+     * online.
+     */
+    public static void onTeamUpdated(Team team) {
+        memberPages.remove(GuildRegistry.getId(team));
+        for (Listing listing : listings.values()) {
+            listing.update(team);
+        }
+    }
+
+    public static void onTeamRemoved(Team team) {
+        memberPages.remove(GuildRegistry.getId(team));
+        for (Listing listing : listings.values()) {
+            listing.remove(team);
+        }
+    }
+
+    private static int pageCount(int entries) {
+        return Math.max(1, (entries + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    private static void clear() {
+        memberPages.clear();
+        for (Listing listing : listings.values()) {
+            listing.clear();
+        }
+    }
+
+    public enum Order {
+        NAME("name", team -> 0),
+        SIZE("size", team -> team.getPlayerList().size()),
+        ACTIVITY("activity", team -> GuildRoster.getOnlineMembers(team).size());
+
+        private final String name;
+        private final ToIntFunction<Team> key;
+
+        Order(String name, ToIntFunction<Team> key) {
+            this.name = name;
+            this.key = key;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    /**
+     * Guilds sorted by a key, descending, and then by name. The key each guild was sorted with is remembered so that
+     * it can still be found after the key has changed.
+     */
+    private static class Listing {
+        private final ToIntFunction<Team> key;
+        private final Reference2IntOpenHashMap<Team> keys = new Reference2IntOpenHashMap<>();
+        private final ArrayList<Team> teams = new ArrayList<>();
+        private Text[] pages = new Text[0];
+        private boolean built;
+
+        private Listing(ToIntFunction<Team> key) {
+            this.key = key;
+        }
+
+        private void build(Scoreboard scoreboard) {
+            if (this.built) return;
+            for (Team team : scoreboard.getTeams()) {
+                this.keys.put(team, this.key.applyAsInt(team));
+                this.teams.add(team);
+            }
+            this.teams.sort(this::compare);
+            this.pages = new Text[pageCount(this.teams.size())];
+            this.built = true;
+        }
+
+        private int getPageCount() {
+            return this.pages.length;
+        }
+
+        private Text getPage(Order order, int page) {
+            if (page < 1 || page > this.pages.length) return null;
+            if (this.pages[page - 1] == null) {
+                List<Team> entries = this.teams.subList((page - 1) * PAGE_SIZE,
+                    Math.min(page * PAGE_SIZE, this.teams.size()));
+                MutableText body = Text.empty();
+                for (Team team : entries) {
+                    body.append("\n").append(Text.translatable("commands.teamcmd.list.teams.entry",
+                        team.getFormattedName(), team.getPlayerList().size(),
+                        GuildRoster.getOnlineMembers(team).size()));
+                }
+                this.pages[page - 1] = body;
+            }
+            // the header changes with every guild that is added or removed, so only the entries are cached
+            return Text.translatable("commands.teamcmd.list.teams.page", this.teams.size(), page, this.pages.length,
+                order.getName()).append(this.pages[page - 1]);
+        }
+
+        private void update(Team team) {
+            if (!this.built) return;
+            int from = this.keys.containsKey(team) ? indexOf(team) : -1;
+            if (from >= 0) this.teams.remove(from);
+
+            this.keys.put(team, this.key.applyAsInt(team));
+            int to = -Collections.binarySearch(this.teams, team, this::compare) - 1;
+            this.teams.add(to, team);
+
+            if (from < 0) {
+                resize();
+                invalidate(to, this.teams.size() - 1);
+            } else {
+                // display names, colors and counts are rendered, so the old page is stale even if nothing moved
+                invalidate(Math.min(from, to), Math.max(from, to));
+            }
+        }
+
+        private void remove(Team team) {
+            if (!this.built || !this.keys.containsKey(team)) return;
+            int index = indexOf(team);
+            this.teams.remove(index);
+            this.keys.removeInt(team);
+            resize();
+            invalidate(index, this.teams.size());
+        }
+
+        private int indexOf(Team team) {
+            return Collections.binarySearch(this.teams, team, this::compare);
+        }
+
+        private int compare(Team a, Team b) {
+            int result = Integer.compare(this.keys.getInt(b), this.keys.getInt(a));
+            return result != 0 ? result : a.getName().compareTo(b.getName());
+        }
+
+        private void resize() {
+            int pageCount = pageCount(this.teams.size());
+            if (pageCount != this.pages.length) this.pages = Arrays.copyOf(this.pages, pageCount);
+        }
+
+        private void invalidate(int fromIndex, int toIndex) {
+            int last = Math.min(toIndex / PAGE_SIZE, this.pages.length - 1);
+            for (int page = fromIndex / PAGE_SIZE; page <= last; page++) {
+                this.pages[page] = null;
+            }
+        }
+
+        private void clear() {
+            this.keys.clear();
+            this.teams.clear();
+            this.pages = new Text[0];
+            this.built = false;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.github.beabfc.teamcmd;
+
+import io.github.beabfc.teamcmd.audit.GuildAudit;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Removes members that have not been online for a while and disbands guilds without active members. A run goes
+ * through the guilds a few at a time, using at most {@link Config#maintenanceBudgetMicros} of every tick, so even
+ * thousands of guilds never cause a long tick. A dry run only reports what would be changed.
+ */
+public abstract class GuildMaintenance {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int AUTO_PRUNE_INTERVAL = 20 * 60 * 60 * 24;
+    private static final int AUTO_PRUNE_DELAY = 20 * 60 * 5;
+    private static final String ACTOR = "prune";
+
+    private static final ArrayDeque<String> queue = new ArrayDeque<>();
+    private static Run run;
+
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(GuildMaintenance::tick);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            queue.clear();
+            run = null;
+        });
+    }
+
+    /**
+     * @param onDone called on the server thread once every guild has been checked
+     * @return the number of guilds that will be checked, or {@code -1} if a run is already in progress
+     */
+    public static int start(MinecraftServer server, int inactiveDays, boolean dryRun, Consumer<Report> onDone) {
+        if (run != null) return -1;
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(inactiveDays);
+        run = new Run(cutoff, dryRun, server.getTicks(), onDone);
+        queue.addAll(server.getScoreboard().getTeamNames());
+        return queue.size();
+    }
+
+    private static void tick(MinecraftServer server) {
+        if (run == null) {
+            Config config = TeamCommand.getConfig();
+            if (config.autoPrune && server.getTicks() % AUTO_PRUNE_INTERVAL == AUTO_PRUNE_DELAY) {
+                start(server, config.pruneInactiveDays, false, report -> LOGGER.info("Pruned guilds: {} checked, " +
+                        "{} disbanded, {} members removed, {} ownerships passed on", report.checked(),
+                    report.disbanded().size(), report.removedMembers(), report.passedOwnerships()));
+            }
+            return;
+        }
+
+        Run current = run;
+        long deadline = System.nanoTime() + TeamCommand.getConfig().maintenanceBudgetMicros * 1000L;
+        // at least one guild is checked every tick, so a run always ends however small the budget is
+        if (!queue.isEmpty()) {
+            TeamUpdates.batch(() -> {
+                do {
+                    Team team = server.getScoreboard().getTeam(queue.poll());
+                    if (team != null) prune(server, team, current);
+                } while (!queue.isEmpty() && System.nanoTime() < deadline);
+            });
+        }
+        if (queue.isEmpty()) {
+            run = null;
+            current.onDone.accept(new Report(current.dryRun, current.checked, current.disbanded,
+                current.removedMembers, current.passedOwnerships, server.getTicks() - current.startTick));
+        }
+    }
+
+    private static void prune(MinecraftServer server, Team team, Run run) {
+        run.checked++;
+        List<String> inactive = new ArrayList<>();
+        String successor = null;
+        UUID successorUuid = null;
+        long successorLastSeen = Long.MIN_VALUE;
+        for (String member : team.getPlayerList()) {
+            long lastSeen = PlayerActivity.getLastSeen(server, member);
+            if (lastSeen < run.cutoff) {
+                inactive.add(member);
+            } else if (lastSeen > successorLastSeen) {
+                UUID uuid = PlayerDirectory.getUuid(member);
+                if (uuid != null) {
+                    successor = member;
+                    successorUuid = uuid;
+                    successorLastSeen = lastSeen;
+                }
+            }
+        }
+
+        Scoreboard scoreboard = server.getScoreboard();
+        if (inactive.size() == team.getPlayerList().size()) {
+            run.disbanded.add(team.getName());
+            if (!run.dryRun) {
+                GuildAudit.record("disband", ACTOR, team.getName(), "", inactive.size() + " inactive members");
+                scoreboard.removeTeam(team);
+            }
+            return;
+        }
+        if (inactive.isEmpty()) return;
+
+        // the most recently seen member takes over from an inactive owner, if nobody can the owner stays
+        UUID owner = GuildOwners.getOwner(team.getName());
+        String ownerName = owner == null ? null : PlayerDirectory.getName(owner);
+        String ownerEntry = null;
+        for (String member : inactive) {
+            if (member.equalsIgnoreCase(ownerName)) ownerEntry = member;
+        }
+        if (ownerEntry != null && successor == null) {
+            inactive.remove(ownerEntry);
+        } else if (ownerEntry != null) {
+            run.passedOwnerships++;
+            if (!run.dryRun) {
+                GuildOwners.setOwner(successorUuid, team.getName());
+                GuildAudit.record("pass_ownership", ACTOR, team.getName(), successor, "owner inactive");
+            }
+        }
+        run.removedMembers += inactive.size();
+        if (run.dryRun) return;
+        for (String member : inactive) {
+            if (team.getPlayerList().contains(member)) {
+                scoreboard.removePlayerFromTeam(member, team);
+                GuildAudit.record("kick", ACTOR, team.getName(), member, "inactive");
+            }
+        }
+    }
+
+    public record Report(boolean dryRun, int checked, List<String> disbanded, int removedMembers,
+                         int passedOwnerships, int ticks) {
+    }
+
+    private static class Run {
+        private final long cutoff;
+        private final boolean dryRun;
+        private final int startTick;
+        private final Consumer<Report> onDone;
+        private final List<String> disbanded = new ArrayList<>();
+        private int checked;
+        private int removedMembers;
+        private int passedOwnerships;
+
+        private Run(long cutoff, boolean dryRun, int startTick, Consumer<Report> onDone) {
+            this.cutoff = cutoff;
+            this.dryRun = dryRun;
+            this.startTick = startTick;
+            this.onDone = onDone;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.util.Formatting;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counts how many teams use each display name and color, kept up to date from the scoreboard itself so that teams
+ * created or changed with the vanilla {@code /team} command are included as well.
+ */
+public abstract class GuildNameIndex {
+    private static final Object2IntOpenHashMap<String> displayNames = new Object2IntOpenHashMap<>();
+    private static final int[] colors = new int[Formatting.values().length];
+    private static final Reference2ObjectOpenHashMap<Team, Entry> indexed = new Reference2ObjectOpenHashMap<>();
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+    }
+
+    public static boolean containsDisplayName(String displayName) {
+        return displayNames.getInt(normalize(displayName)) > 0;
+    }
+
+    public static boolean isColorUsed(Formatting color) {
+        return colors[color.ordinal()] > 0;
+    }
+
+    public static void onTeamUpdated(Team team) {
+        String displayName = normalize(team.getDisplayName().getString());
+        Formatting color = team.getColor();
+        Entry previous = indexed.get(team);
+        if (previous != null) {
+            if (previous.displayName.equals(displayName) && previous.color == color) return;
+            remove(previous);
+        }
+        Entry entry = new Entry(displayName, color);
+        indexed.put(team, entry);
+        displayNames.addTo(entry.displayName, 1);
+        colors[entry.color.ordinal()]++;
+    }
+
+    public static void onTeamRemoved(Team team) {
+        Entry entry = indexed.remove(team);
+        if (entry != null) remove(entry);
+    }
+
+    private static void remove(Entry entry) {
+        if (displayNames.addTo(entry.displayName, -1) <= 1) {
+            displayNames.removeInt(entry.displayName);
+        }
+        colors[entry.color.ordinal()]--;
+    }
+
+    private static String normalize(String displayName) {
+        return displayName.toLowerCase(Locale.ROOT);
+    }
+
+    private static void clear() {
+        displayNames.clear();
+        Arrays.fill(colors, 0);
+        indexed.clear();
+    }
+
+    private record Entry(String displayName, Formatting color) {
+    }
+}
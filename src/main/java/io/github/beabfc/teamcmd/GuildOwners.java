@@ -0,0 +1,281 @@
+package io.github.beabfc.teamcmd;
+
+import io.github.beabfc.teamcmd.api.GuildEvents;
+import io.github.beabfc.teamcmd.cluster.GuildReplicator;
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import io.github.beabfc.teamcmd.metrics.OwnerSaveEvent;
+import io.github.beabfc.teamcmd.store.GuildStore;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import net.luckperms.api.LuckPermsProvider;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of guild ownership, seeded from the {@link GuildStore}. Lookups never leave the server thread,
+ * changes are recorded in the guild store and mirrored to the {@link OwnerStore} in the background: writes for the
+ * same player are coalesced, flushed in batches once per second and retried with a backoff if they fail.
+ */
+public abstract class GuildOwners {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int FLUSH_INTERVAL = 20;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final int RETRY_DELAY = 40;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    // keyed by guild id
+    private static final Int2ObjectOpenHashMap<UUID> ownerByTeam = new Int2ObjectOpenHashMap<>();
+    private static final Object2IntOpenHashMap<UUID> teamByOwner = new Object2IntOpenHashMap<>();
+    private static final Map<UUID, PendingWrite> pending = new LinkedHashMap<>();
+    private static final Map<UUID, CompletableFuture<Void>> inFlight = new HashMap<>();
+
+    private static MinecraftServer server;
+    private static OwnerStore store;
+
+    static {
+        teamByOwner.defaultReturnValue(GuildRegistry.NO_ID);
+    }
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(GuildOwners::onServerStarted);
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> flushAndWait());
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+        ServerTickEvents.END_SERVER_TICK.register(GuildOwners::tick);
+    }
+
+    public static void setStore(OwnerStore ownerStore) {
+        store = ownerStore;
+    }
+
+    /**
+     * Replaces the index with the owners from the guild store, without writing anything back.
+     */
+    public static void load(Map<String, UUID> owners) {
+        ownerByTeam.clear();
+        teamByOwner.clear();
+        for (Map.Entry<String, UUID> entry : owners.entrySet()) {
+            int teamId = GuildRegistry.getId(entry.getKey());
+            if (teamId == GuildRegistry.NO_ID) continue;
+            ownerByTeam.put(teamId, entry.getValue());
+            teamByOwner.put(entry.getValue(), teamId);
+        }
+    }
+
+    public static boolean isOwner(UUID player, Team team) {
+        int teamId = GuildRegistry.getId(team);
+        return teamId != GuildRegistry.NO_ID && teamByOwner.getInt(player) == teamId;
+    }
+
+    public static UUID getOwner(String teamName) {
+        return ownerByTeam.get(GuildRegistry.getId(teamName));
+    }
+
+    public static String getOwnedTeam(UUID player) {
+        Team team = GuildRegistry.getTeam(teamByOwner.getInt(player));
+        return team == null ? null : team.getName();
+    }
+
+    public static void setOwner(UUID owner, String teamName) {
+        int teamId = GuildRegistry.getId(teamName);
+        if (teamId == GuildRegistry.NO_ID) return;
+        UUID previousOwner = ownerByTeam.put(teamId, owner);
+        if (previousOwner != null && !previousOwner.equals(owner)) {
+            teamByOwner.removeInt(previousOwner);
+            enqueue(previousOwner, null);
+        }
+        int previousTeamId = teamByOwner.put(owner, teamId);
+        if (previousTeamId != GuildRegistry.NO_ID && previousTeamId != teamId) {
+            ownerByTeam.remove(previousTeamId);
+            String previousTeam = GuildRegistry.getTeam(previousTeamId).getName();
+            GuildStore.setOwner(previousTeam, null);
+            GuildReplicator.onOwnerChanged(previousTeam);
+            GuildEvents.OWNER_CHANGED.invoker().onOwnerChanged(previousTeam, owner, null);
+        }
+        GuildStore.setOwner(teamName, owner);
+        GuildReplicator.onOwnerChanged(teamName);
+        enqueue(owner, teamName);
+        if (!owner.equals(previousOwner)) {
+            GuildEvents.OWNER_CHANGED.invoker().onOwnerChanged(teamName, previousOwner, owner);
+        }
+    }
+
+    public static void clearOwner(UUID owner) {
+        int teamId = teamByOwner.removeInt(owner);
+        if (teamId != GuildRegistry.NO_ID) {
+            ownerByTeam.remove(teamId);
+            String teamName = GuildRegistry.getTeam(teamId).getName();
+            GuildStore.setOwner(teamName, null);
+            GuildReplicator.onOwnerChanged(teamName);
+            enqueue(owner, null);
+            GuildEvents.OWNER_CHANGED.invoker().onOwnerChanged(teamName, owner, null);
+        }
+    }
+
+    public static void onTeamRemoved(Team team) {
+        UUID owner = ownerByTeam.remove(GuildRegistry.getId(team));
+        if (owner != null) {
+            teamByOwner.removeInt(owner);
+            enqueue(owner, null);
+        }
+    }
+
+    public static int getQueueDepth() {
+        return pending.size() + inFlight.size();
+    }
+
+    private static void onServerStarted(MinecraftServer minecraftServer) {
+        server = minecraftServer;
+        if (store == null && FabricLoader.getInstance().isModLoaded("luckperms")) {
+            store = new LuckPermsOwnerStore(LuckPermsProvider.get().getUserManager());
+        }
+        if (store == null) return;
+
+        store.loadAll().whenComplete((owners, error) -> minecraftServer.execute(() -> {
+            if (error != null) {
+                LOGGER.error("Failed to load guild owners", error);
+            } else {
+                reconcile(owners);
+            }
+        }));
+    }
+
+    /**
+     * Brings the store in line with the index. Changes made while the store was loading take precedence. Before the
+     * guild store has been written once the owners from the store are adopted, afterwards every entry that differs
+     * from the guild store is corrected.
+     */
+    private static void reconcile(Map<UUID, String> owners) {
+        int adopted = 0;
+        int corrected = 0;
+        for (Map.Entry<UUID, String> entry : owners.entrySet()) {
+            UUID owner = entry.getKey();
+            String teamName = entry.getValue();
+            int teamId = GuildRegistry.getId(teamName);
+            int indexedId = teamByOwner.getInt(owner);
+            String indexed = indexedId == GuildRegistry.NO_ID ? null : GuildRegistry.getTeam(indexedId).getName();
+            if (teamName.equals(indexed) || pending.containsKey(owner) || inFlight.containsKey(owner)) continue;
+
+            if (!GuildStore.isAuthoritative() && indexed == null && teamId != GuildRegistry.NO_ID
+                && !ownerByTeam.containsKey(teamId)) {
+                ownerByTeam.put(teamId, owner);
+                teamByOwner.put(owner, teamId);
+                GuildStore.setOwner(teamName, owner);
+                GuildEvents.OWNER_CHANGED.invoker().onOwnerChanged(teamName, null, owner);
+                adopted++;
+            } else {
+                enqueue(owner, indexed);
+                corrected++;
+            }
+        }
+        for (Object2IntMap.Entry<UUID> entry : teamByOwner.object2IntEntrySet()) {
+            UUID owner = entry.getKey();
+            String teamName = GuildRegistry.getTeam(entry.getIntValue()).getName();
+            if (!teamName.equals(owners.get(owner)) && !pending.containsKey(owner)
+                && !inFlight.containsKey(owner)) {
+                enqueue(owner, teamName);
+                corrected++;
+            }
+        }
+        LOGGER.info("Loaded {} guild owners, adopted {} and corrected {} entries", teamByOwner.size(), adopted,
+            corrected);
+    }
+
+    private static void enqueue(UUID owner, String teamName) {
+        pending.put(owner, new PendingWrite(teamName));
+    }
+
+    private static void tick(MinecraftServer minecraftServer) {
+        if (minecraftServer.getTicks() % FLUSH_INTERVAL == 0) {
+            flush(minecraftServer.getTicks(), false);
+        }
+    }
+
+    private static void flush(int currentTick, boolean force) {
+        if (store == null || pending.isEmpty()) return;
+
+        MinecraftServer minecraftServer = server;
+        Iterator<Map.Entry<UUID, PendingWrite>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, PendingWrite> entry = iterator.next();
+            UUID owner = entry.getKey();
+            PendingWrite write = entry.getValue();
+            // keep writes for the same player ordered, the next one goes out once the current one is done
+            if (inFlight.containsKey(owner) || (!force && write.notBefore > currentTick)) continue;
+
+            iterator.remove();
+            OwnerSaveEvent event = new OwnerSaveEvent();
+            event.queueDepth = pending.size();
+            event.begin();
+            long start = System.nanoTime();
+            CompletableFuture<Void> future = store.save(owner, write.teamName);
+            inFlight.put(owner, future);
+            future.whenComplete((result, error) -> {
+                long duration = System.nanoTime() - start;
+                if (event.shouldCommit()) {
+                    event.owner = owner.toString();
+                    event.failed = error != null;
+                    event.commit();
+                }
+                minecraftServer.execute(() -> onSaved(owner, write, error, duration));
+            });
+        }
+    }
+
+    private static void onSaved(UUID owner, PendingWrite write, Throwable error, long duration) {
+        GuildMetrics.recordOwnerSave(duration, error != null);
+        inFlight.remove(owner);
+        if (error == null || pending.containsKey(owner)) return;
+
+        if (++write.attempts >= MAX_ATTEMPTS) {
+            LOGGER.error("Giving up on saving guild owner {} after {} attempts", owner, write.attempts, error);
+        } else {
+            LOGGER.warn("Failed to save guild owner {}, retrying", owner, error);
+            write.notBefore = server.getTicks() + (RETRY_DELAY << write.attempts);
+            pending.put(owner, write);
+        }
+    }
+
+    private static void flushAndWait() {
+        // a second round picks up writes that were waiting for an earlier one of the same player
+        for (int round = 0; round < 2 && !(pending.isEmpty() && inFlight.isEmpty()); round++) {
+            flush(0, true);
+            try {
+                CompletableFuture.allOf(inFlight.values().toArray(new CompletableFuture[0]))
+                    .get(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (Exception ex) {
+                LOGGER.error("Failed to save all guild owners before shutdown", ex);
+                return;
+            }
+            // completion callbacks are no longer run by the stopping server
+            inFlight.clear();
+        }
+    }
+
+    private static void clear() {
+        ownerByTeam.clear();
+        teamByOwner.clear();
+        pending.clear();
+        inFlight.clear();
+        server = null;
+    }
+
+    private static class PendingWrite {
+        private final String teamName;
+        private int attempts;
+        private int notBefore;
+
+        private PendingWrite(String teamName) {
+            this.teamName = teamName;
+        }
+    }
+}
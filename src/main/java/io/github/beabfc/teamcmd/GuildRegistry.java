@@ -0,0 +1,89 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.scoreboard.AbstractTeam;
+import net.minecraft.scoreboard.Team;
+
+/**
+ * Assigns every team on the scoreboard a small integer id, so per-guild state can be kept in primitive keyed maps
+ * and arrays instead of maps keyed by team name. The id is stored on the team itself and stays the same for as long
+ * as the team exists; ids of removed teams are reused, which keeps them below the number of teams that ever existed
+ * at the same time. Ids are not saved, everything that is written to disk uses the team name.
+ */
+public abstract class GuildRegistry {
+    public static final int NO_ID = -1;
+
+    private static final ObjectArrayList<Team> teams = new ObjectArrayList<>();
+    private static final Object2IntOpenHashMap<String> idByName = new Object2IntOpenHashMap<>();
+    private static final IntArrayList freeIds = new IntArrayList();
+
+    static {
+        idByName.defaultReturnValue(NO_ID);
+    }
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+    }
+
+    /**
+     * Safe to call from any thread, the id is a volatile field of the team.
+     *
+     * @return the id or {@link #NO_ID} if the team is {@code null} or not on the scoreboard
+     */
+    public static int getId(AbstractTeam team) {
+        return team instanceof GuildIdHolder holder ? holder.teamcmd$getGuildId() : NO_ID;
+    }
+
+    public static int getId(String teamName) {
+        return idByName.getInt(teamName);
+    }
+
+    public static Team getTeam(int id) {
+        return id >= 0 && id < teams.size() ? teams.get(id) : null;
+    }
+
+    /**
+     * @return an upper bound for all ids that are currently in use
+     */
+    public static int capacity() {
+        return teams.size();
+    }
+
+    public static void onTeamAdded(Team team) {
+        if (getId(team) != NO_ID) return;
+        int id;
+        if (freeIds.isEmpty()) {
+            id = teams.size();
+            teams.add(team);
+        } else {
+            id = freeIds.popInt();
+            teams.set(id, team);
+        }
+        idByName.put(team.getName(), id);
+        if (team instanceof GuildIdHolder holder) holder.teamcmd$setGuildId(id);
+    }
+
+    /**
+     * Has to be the last thing called for a removed team, everything before can still look up the id.
+     */
+    public static void onTeamRemoved(Team team) {
+        int id = getId(team);
+        if (id == NO_ID) return;
+        teams.set(id, null);
+        idByName.removeInt(team.getName());
+        freeIds.push(id);
+        if (team instanceof GuildIdHolder holder) holder.teamcmd$setGuildId(NO_ID);
+    }
+
+    private static void clear() {
+        for (Team team : teams) {
+            if (team instanceof GuildIdHolder holder) holder.teamcmd$setGuildId(NO_ID);
+        }
+        teams.clear();
+        idByName.clear();
+        freeIds.clear();
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.beabfc.teamcmd;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.scoreboard.AbstractTeam;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.PersistentState;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Alliances and enmities between guilds. Relations are kept in bit matrices indexed by guild id because
+ * {@link #isAllied} is checked for every hit between two players. An alliance needs both guilds to ask for it, an
+ * enemy is declared by one guild alone.
+ */
+public abstract class GuildRelations {
+    // symmetric
+    private static final RelationMatrix allies = new RelationMatrix();
+    // the guild of the row has declared the guild of the column an enemy
+    private static final RelationMatrix enemies = new RelationMatrix();
+    // the guild of the row has asked the guild of the column for an alliance, not saved
+    private static final RelationMatrix requests = new RelationMatrix();
+    private static final BitSet allianceChat = new BitSet();
+    private static State state;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            state = State.get(server);
+            state.apply();
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+    }
+
+    public static boolean isAllied(AbstractTeam team, AbstractTeam other) {
+        return allies.get(GuildRegistry.getId(team), GuildRegistry.getId(other));
+    }
+
+    /**
+     * @return whether {@code team} has declared {@code other} an enemy
+     */
+    public static boolean isEnemy(Team team, Team other) {
+        return enemies.get(GuildRegistry.getId(team), GuildRegistry.getId(other));
+    }
+
+    /**
+     * Asks another guild for an alliance, or accepts the request of the other guild if there is one.
+     *
+     * @return whether the guilds are allied now
+     */
+    public static boolean requestAlliance(Team team, Team other) {
+        int id = GuildRegistry.getId(team);
+        int otherId = GuildRegistry.getId(other);
+        enemies.set(id, otherId, false);
+        if (!requests.get(otherId, id)) {
+            requests.set(id, otherId, true);
+            markDirty();
+            return false;
+        }
+        requests.set(otherId, id, false);
+        allies.set(id, otherId, true);
+        allies.set(otherId, id, true);
+        markDirty();
+        return true;
+    }
+
+    public static void declareEnemy(Team team, Team other) {
+        int id = GuildRegistry.getId(team);
+        int otherId = GuildRegistry.getId(other);
+        endAlliance(id, otherId);
+        enemies.set(id, otherId, true);
+        markDirty();
+    }
+
+    /**
+     * Ends an alliance and withdraws the alliance request and the enmity of {@code team} towards {@code other}.
+     *
+     * @return whether anything changed
+     */
+    public static boolean makeNeutral(Team team, Team other) {
+        int id = GuildRegistry.getId(team);
+        int otherId = GuildRegistry.getId(other);
+        boolean changed = endAlliance(id, otherId) | enemies.set(id, otherId, false);
+        if (changed) markDirty();
+        return changed;
+    }
+
+    public static List<Team> getAllies(Team team) {
+        return collect(allies, GuildRegistry.getId(team));
+    }
+
+    public static List<Team> getEnemies(Team team) {
+        return collect(enemies, GuildRegistry.getId(team));
+    }
+
+    public static boolean isAllianceChatEnabled(AbstractTeam team) {
+        int id = GuildRegistry.getId(team);
+        return id != GuildRegistry.NO_ID && allianceChat.get(id);
+    }
+
+    public static void setAllianceChat(Team team, boolean enabled) {
+        allianceChat.set(GuildRegistry.getId(team), enabled);
+        markDirty();
+    }
+
+    /**
+     * @return the allies of a guild that take part in the alliance chat
+     */
+    public static List<Team> getAllianceChatMembers(AbstractTeam team) {
+        List<Team> teams = new ArrayList<>();
+        allies.forEach(GuildRegistry.getId(team), id -> {
+            if (allianceChat.get(id)) teams.add(GuildRegistry.getTeam(id));
+        });
+        return teams;
+    }
+
+    public static void onTeamRemoved(Team team) {
+        int id = GuildRegistry.getId(team);
+        if (id == GuildRegistry.NO_ID) return;
+        allies.clear(id);
+        enemies.clear(id);
+        requests.clear(id);
+        allianceChat.clear(id);
+        markDirty();
+    }
+
+    private static boolean endAlliance(int id, int otherId) {
+        boolean changed = allies.set(id, otherId, false);
+        allies.set(otherId, id, false);
+        changed |= requests.set(id, otherId, false);
+        requests.set(otherId, id, false);
+        return changed;
+    }
+
+    private static List<Team> collect(RelationMatrix matrix, int id) {
+        List<Team> teams = new ArrayList<>();
+        matrix.forEach(id, otherId -> teams.add(GuildRegistry.getTeam(otherId)));
+        return teams;
+    }
+
+    private static void markDirty() {
+        if (state != null) state.markDirty();
+    }
+
+    private static void clear() {
+        allies.clear();
+        enemies.clear();
+        requests.clear();
+        allianceChat.clear();
+        state = null;
+    }
+
+    /**
+     * Saves the relations by team name, the ids are only valid while the server is running.
+     */
+    private static class State extends PersistentState {
+        private static final String ID = "teamcmd_relations";
+        private NbtCompound loaded = new NbtCompound();
+
+        private static State get(MinecraftServer server) {
+            return server.getOverworld().getPersistentStateManager().getOrCreate(State::fromNbt, State::new, ID);
+        }
+
+        private static State fromNbt(NbtCompound nbt) {
+            State state = new State();
+            state.loaded = nbt;
+            return state;
+        }
+
+        private void apply() {
+            for (NbtElement element : this.loaded.getList("allies", NbtElement.COMPOUND_TYPE)) {
+                NbtCompound pair = (NbtCompound) element;
+                int id = GuildRegistry.getId(pair.getString("guild"));
+                int otherId = GuildRegistry.getId(pair.getString("other"));
+                if (id == GuildRegistry.NO_ID || otherId == GuildRegistry.NO_ID) continue;
+                allies.set(id, otherId, true);
+                allies.set(otherId, id, true);
+            }
+            for (NbtElement element : this.loaded.getList("enemies", NbtElement.COMPOUND_TYPE)) {
+                NbtCompound pair = (NbtCompound) element;
+                int id = GuildRegistry.getId(pair.getString("guild"));
+                int otherId = GuildRegistry.getId(pair.getString("other"));
+                if (id == GuildRegistry.NO_ID || otherId == GuildRegistry.NO_ID) continue;
+                enemies.set(id, otherId, true);
+            }
+            for (NbtElement element : this.loaded.getList("allianceChat", NbtElement.STRING_TYPE)) {
+                int id = GuildRegistry.getId(element.asString());
+                if (id != GuildRegistry.NO_ID) allianceChat.set(id);
+            }
+            this.loaded = null;
+        }
+
+        @Override
+        public NbtCompound writeNbt(NbtCompound nbt) {
+            NbtList allyList = new NbtList();
+            NbtList enemyList = new NbtList();
+            NbtList chatList = new NbtList();
+            for (int id = 0; id < GuildRegistry.capacity(); id++) {
+                Team team = GuildRegistry.getTeam(id);
+                if (team == null) continue;
+                int teamId = id;
+                allies.forEach(id, otherId -> {
+                    if (otherId > teamId) allyList.add(pair(team, GuildRegistry.getTeam(otherId)));
+                });
+                enemies.forEach(id, otherId -> enemyList.add(pair(team, GuildRegistry.getTeam(otherId))));
+                if (allianceChat.get(id)) chatList.add(NbtString.of(team.getName()));
+            }
+            nbt.put("allies", allyList);
+            nbt.put("enemies", enemyList);
+            nbt.put("allianceChat", chatList);
+            return nbt;
+        }
+
+        private static NbtCompound pair(Team team, Team other) {
+            NbtCompound pair = new NbtCompound();
+            pair.putString("guild", team.getName());
+            pair.putString("other", other.getName());
+            return pair;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.scoreboard.AbstractTeam;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.*;
+
+/**
+ * Index from guild to the connections of its online members, so that messages to a guild only touch its members
+ * instead of every player on the server. Connections are stored rather than player entities because the entity is
+ * replaced on respawn while the network handler is not.
+ */
+public abstract class GuildRoster {
+    // keyed by guild id
+    private static final Int2ObjectOpenHashMap<Set<ServerPlayNetworkHandler>> onlineByTeam =
+        new Int2ObjectOpenHashMap<>();
+    private static final Object2IntOpenHashMap<UUID> teamByPlayer = new Object2IntOpenHashMap<>();
+
+    static {
+        teamByPlayer.defaultReturnValue(GuildRegistry.NO_ID);
+    }
+
+    public static void register() {
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> onLogin(handler));
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> onLogout(handler));
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+    }
+
+    public static Collection<ServerPlayNetworkHandler> getOnlineMembers(AbstractTeam team) {
+        Set<ServerPlayNetworkHandler> members = onlineByTeam.get(GuildRegistry.getId(team));
+        return members == null ? Collections.emptySet() : members;
+    }
+
+    public static void onLogin(ServerPlayNetworkHandler handler) {
+        Team team = handler.player.getScoreboard().getPlayerTeam(handler.player.getEntityName());
+        if (team != null) add(handler, GuildRegistry.getId(team));
+    }
+
+    public static void onLogout(ServerPlayNetworkHandler handler) {
+        remove(handler);
+    }
+
+    public static void onPlayerJoinedTeam(MinecraftServer server, String playerName, Team team) {
+        ServerPlayerEntity player = server.getPlayerManager().getPlayer(playerName);
+        if (player != null) add(player.networkHandler, GuildRegistry.getId(team));
+    }
+
+    public static void onPlayerLeftTeam(MinecraftServer server, String playerName) {
+        ServerPlayerEntity player = server.getPlayerManager().getPlayer(playerName);
+        if (player != null) remove(player.networkHandler);
+    }
+
+    public static void onTeamRemoved(Team team) {
+        Set<ServerPlayNetworkHandler> members = onlineByTeam.remove(GuildRegistry.getId(team));
+        if (members == null) return;
+        for (ServerPlayNetworkHandler handler : members) {
+            teamByPlayer.removeInt(handler.player.getUuid());
+        }
+    }
+
+    /**
+     * Compares the index against the scoreboard teams of all online players and rebuilds it if they disagree.
+     *
+     * @return the number of players whose indexed guild did not match the scoreboard
+     */
+    public static int verify(MinecraftServer server) {
+        int drift = 0;
+        int indexed = 0;
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            Team team = server.getScoreboard().getPlayerTeam(player.getEntityName());
+            int expected = GuildRegistry.getId(team);
+            int actual = teamByPlayer.getInt(player.getUuid());
+            Set<ServerPlayNetworkHandler> members = onlineByTeam.get(actual);
+            if (expected != actual || (members != null && !members.contains(player.networkHandler))) {
+                drift++;
+            }
+            if (actual != GuildRegistry.NO_ID) indexed++;
+        }
+        // entries left behind by players that are no longer online
+        drift += teamByPlayer.size() - indexed;
+
+        if (drift > 0) {
+            clear();
+            for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+                onLogin(player.networkHandler);
+            }
+        }
+        return drift;
+    }
+
+    public static int size() {
+        return teamByPlayer.size();
+    }
+
+    public static int teamCount() {
+        return onlineByTeam.size();
+    }
+
+    private static void add(ServerPlayNetworkHandler handler, int teamId) {
+        remove(handler);
+        if (teamId == GuildRegistry.NO_ID) return;
+        teamByPlayer.put(handler.player.getUuid(), teamId);
+        onlineByTeam.computeIfAbsent(teamId, t -> new HashSet<>()).add(handler);
+        onActivityChanged(teamId);
+    }
+
+    private static void remove(ServerPlayNetworkHandler handler) {
+        int teamId = teamByPlayer.removeInt(handler.player.getUuid());
+        if (teamId == GuildRegistry.NO_ID) return;
+        Set<ServerPlayNetworkHandler> members = onlineByTeam.get(teamId);
+        if (members != null) {
+            members.remove(handler);
+            if (members.isEmpty()) onlineByTeam.remove(teamId);
+        }
+        onActivityChanged(teamId);
+    }
+
+    private static void onActivityChanged(int teamId) {
+        Team team = GuildRegistry.getTeam(teamId);
+        if (team != null) GuildListings.onTeamUpdated(team);
+    }
+
+    private static void clear() {
+        onlineByTeam.clear();
+        teamByPlayer.clear();
+    }
+}
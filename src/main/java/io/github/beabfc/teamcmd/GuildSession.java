@@ -0,0 +1,42 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+
+import java.util.UUID;
+
+/**
+ * Per-player guild state for the duration of a connection. Flags that are read from the network threads are
+ * volatile, everything else is only touched on the server thread.
+ */
+public class GuildSession {
+    private final UUID playerUuid;
+    private volatile boolean guildChat;
+    // keyed by guild id, in the order the invites were received
+    final Int2ObjectLinkedOpenHashMap<TeamUtil.TeamInvite> invites = new Int2ObjectLinkedOpenHashMap<>();
+    final TokenBucket chatBucket = new TokenBucket();
+
+    GuildSession(UUID playerUuid, boolean guildChat) {
+        this.playerUuid = playerUuid;
+        this.guildChat = guildChat;
+    }
+
+    public UUID getPlayerUuid() {
+        return this.playerUuid;
+    }
+
+    public boolean isGuildChat() {
+        return this.guildChat;
+    }
+
+    public void setGuildChat(boolean guildChat) {
+        this.guildChat = guildChat;
+        GuildSessions.persist(this);
+    }
+
+    /**
+     * @return whether any of the persisted flags differ from their default value
+     */
+    boolean hasPersistentState() {
+        return this.guildChat;
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.beabfc.teamcmd;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.PersistentState;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store for the {@link GuildSession} of every online player. Sessions are opened on login and dropped on logout;
+ * only flags that differ from their defaults are written to the world save.
+ */
+public abstract class GuildSessions {
+    private static final ConcurrentHashMap<UUID, GuildSession> sessions = new ConcurrentHashMap<>();
+    private static State state;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> state = State.get(server));
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            sessions.clear();
+            state = null;
+        });
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> getOrCreate(handler.player.getUuid()));
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> sessions.remove(handler.player.getUuid()));
+    }
+
+    /**
+     * Lock-free lookup that is safe to call from any thread.
+     *
+     * @return the session of the player or {@code null} if they are not online
+     */
+    public static GuildSession get(UUID playerUuid) {
+        return sessions.get(playerUuid);
+    }
+
+    public static GuildSession getOrCreate(UUID playerUuid) {
+        GuildSession session = sessions.get(playerUuid);
+        if (session != null) return session;
+        return sessions.computeIfAbsent(playerUuid, uuid -> new GuildSession(uuid,
+            state != null && state.guildChat.contains(uuid)));
+    }
+
+    static Collection<GuildSession> getAll() {
+        return sessions.values();
+    }
+
+    static void persist(GuildSession session) {
+        if (state == null) return;
+        boolean changed = session.hasPersistentState() ? state.guildChat.add(session.getPlayerUuid()) :
+            state.guildChat.remove(session.getPlayerUuid());
+        if (changed) state.markDirty();
+    }
+
+    private static class State extends PersistentState {
+        private static final String ID = "teamcmd_sessions";
+        private final Set<UUID> guildChat = new HashSet<>();
+
+        private static State get(MinecraftServer server) {
+            return server.getOverworld().getPersistentStateManager().getOrCreate(State::fromNbt, State::new, ID);
+        }
+
+        private static State fromNbt(NbtCompound nbt) {
+            State state = new State();
+            for (NbtElement element : nbt.getList("guildChat", NbtElement.INT_ARRAY_TYPE)) {
+                state.guildChat.add(NbtHelper.toUuid(element));
+            }
+            return state;
+        }
+
+        @Override
+        public NbtCompound writeNbt(NbtCompound nbt) {
+            NbtList list = new NbtList();
+            for (UUID uuid : this.guildChat) {
+                list.add(NbtHelper.fromUuid(uuid));
+            }
+            nbt.put("guildChat", list);
+            return nbt;
+        }
+    }
+}
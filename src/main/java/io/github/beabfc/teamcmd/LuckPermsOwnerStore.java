@@ -0,0 +1,48 @@
+package io.github.beabfc.teamcmd;
+
+import net.luckperms.api.model.user.UserManager;
+import net.luckperms.api.node.NodeType;
+import net.luckperms.api.node.matcher.NodeMatcher;
+import net.luckperms.api.node.types.MetaNode;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stores ownership as {@code guild-owner} meta on the LuckPerms user. {@link UserManager#modifyUser} loads, modifies
+ * and saves the user asynchronously, so this also works for owners that are offline.
+ */
+public class LuckPermsOwnerStore implements OwnerStore {
+    private static final String META_KEY = "guild-owner";
+    private final UserManager userManager;
+
+    public LuckPermsOwnerStore(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, String>> loadAll() {
+        return this.userManager.searchAll(NodeMatcher.metaKey(META_KEY)).thenApply(result -> {
+            Map<UUID, String> owners = new HashMap<>();
+            for (Map.Entry<UUID, Collection<MetaNode>> entry : result.entrySet()) {
+                for (MetaNode node : entry.getValue()) {
+                    owners.putIfAbsent(entry.getKey(), node.getMetaValue());
+                }
+            }
+            return owners;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> save(UUID owner, String teamName) {
+        return this.userManager.modifyUser(owner, user -> {
+            user.data().clear(NodeType.META.predicate(mn -> mn.getMetaKey().equals(META_KEY)));
+            if (teamName != null) {
+                user.data().add(MetaNode.builder(META_KEY, teamName).build());
+            }
+        });
+    }
+}
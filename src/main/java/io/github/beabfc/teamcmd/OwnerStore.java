@@ -0,0 +1,23 @@
+package io.github.beabfc.teamcmd;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Backend that guild ownership is written through to. Implementations may complete their futures on any thread.
+ */
+public interface OwnerStore {
+
+    /**
+     * @return every player that owns a guild, mapped to the name of that guild
+     */
+    CompletableFuture<Map<UUID, String>> loadAll();
+
+    /**
+     * Stores the guild owned by a player, replacing any previous value.
+     *
+     * @param teamName the owned guild or {@code null} if the player no longer owns a guild
+     */
+    CompletableFuture<Void> save(UUID owner, String teamName);
+}
@@ -0,0 +1,88 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.world.PersistentState;
+
+import java.util.Locale;
+
+/**
+ * When players were last online, saved with the world. Players that have not been seen since the tracking started
+ * count as last seen at that time, so existing members are not treated as inactive right after an update.
+ */
+public abstract class PlayerActivity {
+    private static State state;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> state = State.get(server));
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+                seen(player);
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> state = null);
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> seen(handler.player));
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> seen(handler.player));
+    }
+
+    /**
+     * @param name a scoreboard entry
+     * @return the time in milliseconds, the current time for players that are online
+     */
+    public static long getLastSeen(MinecraftServer server, String name) {
+        if (server.getPlayerManager().getPlayer(name) != null) return System.currentTimeMillis();
+        if (state == null) return System.currentTimeMillis();
+        return state.lastSeen.getOrDefault(normalize(name), state.since);
+    }
+
+    private static void seen(ServerPlayerEntity player) {
+        if (state == null) return;
+        state.lastSeen.put(normalize(player.getEntityName()), System.currentTimeMillis());
+        state.markDirty();
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static class State extends PersistentState {
+        private static final String ID = "teamcmd_activity";
+        private final Object2LongOpenHashMap<String> lastSeen = new Object2LongOpenHashMap<>();
+        private long since = System.currentTimeMillis();
+
+        private static State get(MinecraftServer server) {
+            return server.getOverworld().getPersistentStateManager().getOrCreate(State::fromNbt, State::create, ID);
+        }
+
+        private static State create() {
+            State state = new State();
+            // saved right away, otherwise the start of the tracking would move with every restart
+            state.markDirty();
+            return state;
+        }
+
+        private static State fromNbt(NbtCompound nbt) {
+            State state = new State();
+            state.since = nbt.getLong("since");
+            NbtCompound lastSeen = nbt.getCompound("lastSeen");
+            for (String name : lastSeen.getKeys()) {
+                state.lastSeen.put(name, lastSeen.getLong(name));
+            }
+            return state;
+        }
+
+        @Override
+        public NbtCompound writeNbt(NbtCompound nbt) {
+            nbt.putLong("since", this.since);
+            NbtCompound lastSeen = new NbtCompound();
+            this.lastSeen.object2LongEntrySet().fastForEach(entry -> lastSeen.putLong(entry.getKey(),
+                entry.getLongValue()));
+            nbt.put("lastSeen", lastSeen);
+            return nbt;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.beabfc.teamcmd;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mojang.authlib.GameProfile;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Case-insensitive index of player names and UUIDs, so that commands can refer to players who are offline. It is
+ * seeded from the servers user cache file and the team rosters and kept up to date on login. Unlike the
+ * {@link net.minecraft.util.UserCache} it never asks the Mojang API, lookups are safe on the server thread.
+ */
+public abstract class PlayerDirectory {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String USER_CACHE_FILE = "usercache.json";
+
+    private static final Map<String, Entry> byName = new HashMap<>();
+    private static final Map<UUID, Entry> byUuid = new HashMap<>();
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(PlayerDirectory::load);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            byName.clear();
+            byUuid.clear();
+        });
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> put(handler.player.getGameProfile()));
+    }
+
+    /**
+     * @return the known player with that name in any case or {@code null}
+     */
+    public static Entry find(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public static UUID getUuid(String name) {
+        Entry entry = find(name);
+        return entry == null ? null : entry.uuid();
+    }
+
+    public static String getName(UUID uuid) {
+        Entry entry = byUuid.get(uuid);
+        return entry == null ? null : entry.name();
+    }
+
+    /**
+     * Records a scoreboard entry, its UUID stays unknown until the player logs in.
+     */
+    public static void onTeamMember(String name) {
+        byName.putIfAbsent(name.toLowerCase(Locale.ROOT), new Entry(name, null));
+    }
+
+    public static void put(GameProfile profile) {
+        put(profile.getName(), profile.getId());
+    }
+
+    private static void put(String name, UUID uuid) {
+        Entry entry = new Entry(name, uuid);
+        Entry previous = byUuid.put(uuid, entry);
+        // the player changed their name, the old one may belong to someone else by now
+        if (previous != null && !previous.name().equalsIgnoreCase(name)) {
+            byName.remove(previous.name().toLowerCase(Locale.ROOT), previous);
+        }
+        byName.put(name.toLowerCase(Locale.ROOT), entry);
+    }
+
+    private static void load(MinecraftServer server) {
+        Path userCache = server.getRunDirectory().toPath().resolve(USER_CACHE_FILE);
+        if (Files.exists(userCache)) {
+            try (Reader reader = Files.newBufferedReader(userCache)) {
+                JsonArray entries = JsonParser.parseReader(reader).getAsJsonArray();
+                for (JsonElement element : entries) {
+                    JsonObject entry = element.getAsJsonObject();
+                    if (entry.has("name") && entry.has("uuid")) {
+                        put(entry.get("name").getAsString(), UUID.fromString(entry.get("uuid").getAsString()));
+                    }
+                }
+            } catch (Exception ex) {
+                LOGGER.warn("Could not read the user cache, offline players are only known once they log in", ex);
+            }
+        }
+        for (Team team : server.getScoreboard().getTeams()) {
+            for (String playerName : team.getPlayerList()) {
+                onTeamMember(playerName);
+            }
+        }
+    }
+
+    public record Entry(String name, UUID uuid) {
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.beabfc.teamcmd;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A square matrix of bits indexed by guild id, one row per guild. Lookups are a bounds check and a single array
+ * access, ids that are out of range are never related.
+ */
+class RelationMatrix {
+    private static final int MIN_SIZE = 64;
+
+    private long[] bits = new long[0];
+    private int size;
+    // words per row
+    private int stride;
+
+    boolean get(int row, int column) {
+        if (row < 0 || column < 0 || row >= this.size || column >= this.size) return false;
+        return (this.bits[row * this.stride + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    /**
+     * @return whether the bit changed, always {@code false} for a negative id
+     */
+    boolean set(int row, int column, boolean value) {
+        if (row < 0 || column < 0) return false;
+        if (!value && !get(row, column)) return false;
+        if (value && get(row, column)) return false;
+        ensureSize(Math.max(row, column) + 1);
+        int word = row * this.stride + (column >>> 6);
+        if (value) {
+            this.bits[word] |= 1L << column;
+        } else {
+            this.bits[word] &= ~(1L << column);
+        }
+        return true;
+    }
+
+    void forEach(int row, IntConsumer action) {
+        if (row < 0 || row >= this.size) return;
+        int offset = row * this.stride;
+        for (int word = 0; word < this.stride; word++) {
+            long value = this.bits[offset + word];
+            while (value != 0) {
+                action.accept((word << 6) + Long.numberOfTrailingZeros(value));
+                value &= value - 1;
+            }
+        }
+    }
+
+    /**
+     * Clears the row and the column of a guild, so a reused id starts without relations.
+     */
+    void clear(int id) {
+        if (id < 0 || id >= this.size) return;
+        Arrays.fill(this.bits, id * this.stride, (id + 1) * this.stride, 0);
+        for (int row = 0; row < this.size; row++) {
+            this.bits[row * this.stride + (id >>> 6)] &= ~(1L << id);
+        }
+    }
+
+    void clear() {
+        this.bits = new long[0];
+        this.size = 0;
+        this.stride = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    private void ensureSize(int size) {
+        if (size <= this.size) return;
+        int newSize = Math.max(Math.max(size, this.size * 2), MIN_SIZE);
+        int newStride = (newSize + 63) >>> 6;
+        long[] newBits = new long[newSize * newStride];
+        for (int row = 0; row < this.size; row++) {
+            System.arraycopy(this.bits, row * this.stride, newBits, row * newStride, this.stride);
+        }
+        this.bits = newBits;
+        this.size = newSize;
+        this.stride = newStride;
+    }
+}
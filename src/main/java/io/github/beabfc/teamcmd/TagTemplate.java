@@ -0,0 +1,127 @@
+package io.github.beabfc.teamcmd;
+
+import java.util.ArrayList;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A prefix or suffix format string that is parsed once. Literal text and {@code %s}/{@code %S} conversions with an
+ * optional {@code -} flag, width and precision are rendered directly, any other format string is passed on to
+ * {@link String#format} like before. Those are tried once when compiling, so a broken format fails the config load
+ * instead of every tag refresh.
+ */
+public final class TagTemplate {
+    private final String format;
+    private final Segment[] segments;
+
+    private TagTemplate(String format, Segment[] segments) {
+        this.format = format;
+        this.segments = segments;
+    }
+
+    public static TagTemplate compile(String format) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            if (i >= format.length()) return fallback(format);
+
+            char next = format.charAt(i);
+            if (next == '%') {
+                literal.append('%');
+                i++;
+                continue;
+            } else if (next == 'n') {
+                literal.append(System.lineSeparator());
+                i++;
+                continue;
+            }
+
+            boolean leftAlign = false;
+            if (next == '-') {
+                leftAlign = true;
+                i++;
+            }
+            int width = 0;
+            while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                width = width * 10 + (format.charAt(i++) - '0');
+            }
+            int precision = -1;
+            if (i < format.length() && format.charAt(i) == '.') {
+                i++;
+                precision = 0;
+                int start = i;
+                while (i < format.length() && Character.isDigit(format.charAt(i))) {
+                    precision = precision * 10 + (format.charAt(i++) - '0');
+                }
+                if (start == i) return fallback(format);
+            }
+            if (i >= format.length() || (leftAlign && width == 0)) return fallback(format);
+
+            char conversion = format.charAt(i++);
+            if (conversion != 's' && conversion != 'S') return fallback(format);
+
+            if (literal.length() > 0) {
+                segments.add(Segment.literal(literal.toString()));
+                literal.setLength(0);
+            }
+            segments.add(new Segment(null, leftAlign, width, precision, conversion == 'S'));
+        }
+        if (literal.length() > 0) segments.add(Segment.literal(literal.toString()));
+        return new TagTemplate(format, segments.toArray(new Segment[0]));
+    }
+
+    // rejects format strings that would only fail once the tags are refreshed
+    private static TagTemplate fallback(String format) {
+        try {
+            String.format(format, "");
+        } catch (IllegalFormatException ex) {
+            throw new IllegalArgumentException("Invalid tag format \"" + format + "\": " + ex.getMessage(), ex);
+        }
+        return new TagTemplate(format, null);
+    }
+
+    public String render(String displayName) {
+        if (this.segments == null) return String.format(this.format, displayName);
+
+        StringBuilder builder = new StringBuilder();
+        for (Segment segment : this.segments) {
+            segment.appendTo(builder, displayName);
+        }
+        return builder.toString();
+    }
+
+    private record Segment(String literal, boolean leftAlign, int width, int precision, boolean upperCase) {
+
+        private static Segment literal(String text) {
+            return new Segment(text, false, 0, -1, false);
+        }
+
+        private void appendTo(StringBuilder builder, String argument) {
+            if (this.literal != null) {
+                builder.append(this.literal);
+                return;
+            }
+            String value = this.precision >= 0 && this.precision < argument.length() ?
+                argument.substring(0, this.precision) : argument;
+            if (this.upperCase) value = value.toUpperCase(Locale.ROOT);
+
+            int padding = this.width - value.length();
+            if (!this.leftAlign) pad(builder, padding);
+            builder.append(value);
+            if (this.leftAlign) pad(builder, padding);
+        }
+
+        private static void pad(StringBuilder builder, int count) {
+            for (int i = 0; i < count; i++) {
+                builder.append(' ');
+            }
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package io.github.beabfc.teamcmd;
 
+import io.github.beabfc.teamcmd.api.GuildSnapshots;
+import io.github.beabfc.teamcmd.audit.GuildAudit;
+import io.github.beabfc.teamcmd.cluster.Cluster;
+import io.github.beabfc.teamcmd.cluster.GuildChatRelay;
+import io.github.beabfc.teamcmd.cluster.GuildReplicator;
+import io.github.beabfc.teamcmd.store.GuildStore;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
@@ -7,12 +13,46 @@ import net.fabricmc.loader.api.FabricLoader;
 import org.apache.logging.log4j.LogManager;
 
 public class TeamCommand implements DedicatedServerModInitializer {
-    public static final Config CONFIG = Config.load("teamcommand.toml");
+    private static final String CONFIG_NAME = "teamcommand.toml";
+    private static volatile Config config = Config.load(CONFIG_NAME);
+
+    public static Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Replaces the active config with a freshly loaded one. The command name only takes effect after a restart as
+     * commands are registered once.
+     */
+    public static void reloadConfig() {
+        config = Config.load(CONFIG_NAME);
+    }
 
     @Override
     public void onInitializeServer() {
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> CommandBuilder.register(dispatcher));
         ServerTickEvents.END_SERVER_TICK.register(TeamUtil::tick);
+        GuildRegistry.register();
+        GuildRoster.register();
+        GuildSessions.register();
+        PlayerDirectory.register();
+        GuildStore.register();
+        GuildOwners.register();
+        GuildNameIndex.register();
+        GuildArgument.register();
+        GuildListings.register();
+        GuildChatLimits.register();
+        GuildChatHistory.register();
+        GuildRelations.register();
+        PlayerActivity.register();
+        GuildMaintenance.register();
+        GuildAudit.register();
+        Cluster.register();
+        GuildChatRelay.register();
+        GuildReplicator.register();
+        GuildSnapshots.register();
+        TeamTags.register();
+        TeamUpdates.register();
 
         if (!FabricLoader.getInstance().isModLoaded("luckperms")) {
             LogManager.getLogger().error("LuckPerms is not detected, this mod will not function without it!");
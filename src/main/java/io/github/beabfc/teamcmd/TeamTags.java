@@ -0,0 +1,92 @@
+package io.github.beabfc.teamcmd;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.ArrayDeque;
+
+/**
+ * Renders the prefix and suffix of teams from the configured templates. After a config reload the tags of all
+ * teams are refreshed a few at a time, using at most {@link Config#tagRefreshBudgetMicros} of every tick.
+ */
+public abstract class TeamTags {
+    private static final ArrayDeque<String> refreshQueue = new ArrayDeque<>();
+
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(TeamTags::tick);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> refreshQueue.clear());
+    }
+
+    public static void update(Team team) {
+        setPrefix(team);
+        setSuffix(team);
+    }
+
+    public static void setPrefix(Team team) {
+        Config config = TeamCommand.getConfig();
+        Text prefix = render(team, config.getPrefixTemplate(), config.prefixUseTeamColor);
+        if (!prefix.equals(team.getPrefix())) team.setPrefix(prefix);
+    }
+
+    public static void setSuffix(Team team) {
+        Config config = TeamCommand.getConfig();
+        Text suffix = render(team, config.getSuffixTemplate(), config.suffixUseTeamColor);
+        if (!suffix.equals(team.getSuffix())) team.setSuffix(suffix);
+    }
+
+    /**
+     * Queues every team on the scoreboard for a refresh of its tags.
+     *
+     * @return the number of queued teams
+     */
+    public static int scheduleRefresh(MinecraftServer server) {
+        refreshQueue.clear();
+        refreshQueue.addAll(server.getScoreboard().getTeamNames());
+        return refreshQueue.size();
+    }
+
+    private static void tick(MinecraftServer server) {
+        if (refreshQueue.isEmpty()) return;
+
+        long deadline = System.nanoTime() + TeamCommand.getConfig().tagRefreshBudgetMicros * 1000L;
+        TeamUpdates.batch(() -> {
+            do {
+                Team team = server.getScoreboard().getTeam(refreshQueue.poll());
+                if (team != null) update(team);
+            } while (!refreshQueue.isEmpty() && System.nanoTime() < deadline);
+        });
+    }
+
+    private static Text render(Team team, TagTemplate template, boolean useTeamColor) {
+        Formatting teamColor = team.getColor();
+        return Text.literal(template.render(team.getDisplayName().getString()))
+            .formatted(useTeamColor ? teamColor : getSecondaryColor(teamColor));
+    }
+
+    private static Formatting getSecondaryColor(Formatting primary) {
+        Formatting secondary = Formatting.RESET;
+        switch (primary) {
+            case AQUA -> secondary = Formatting.DARK_AQUA;
+            case DARK_AQUA -> secondary = Formatting.AQUA;
+            case BLUE -> secondary = Formatting.DARK_BLUE;
+            case DARK_BLUE -> secondary = Formatting.BLUE;
+            case WHITE -> secondary = Formatting.GRAY;
+            case GRAY -> secondary = Formatting.WHITE;
+            case DARK_GRAY -> secondary = Formatting.BLACK;
+            case BLACK -> secondary = Formatting.DARK_GRAY;
+            case RED -> secondary = Formatting.DARK_RED;
+            case DARK_RED -> secondary = Formatting.RED;
+            case GREEN -> secondary = Formatting.DARK_GREEN;
+            case DARK_GREEN -> secondary = Formatting.GREEN;
+            case LIGHT_PURPLE -> secondary = Formatting.DARK_PURPLE;
+            case DARK_PURPLE -> secondary = Formatting.LIGHT_PURPLE;
+            case YELLOW -> secondary = Formatting.GOLD;
+            case GOLD -> secondary = Formatting.YELLOW;
+        }
+        return secondary;
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.beabfc.teamcmd;
+
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.scoreboard.ServerScoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Coalesces the team update packets caused by this mod. Every vanilla {@link Team} setter broadcasts the whole team
+ * to all players; changes made inside {@link #batch} only mark the team as dirty instead, and a single update packet
+ * per dirty team is sent at the end of the tick.
+ */
+public abstract class TeamUpdates {
+    private static final ReferenceLinkedOpenHashSet<Team> dirty = new ReferenceLinkedOpenHashSet<>();
+    private static int depth;
+    private static boolean flushing;
+
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(TeamUpdates::flush);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> dirty.clear());
+    }
+
+    public static void batch(Runnable changes) {
+        depth++;
+        try {
+            changes.run();
+        } finally {
+            depth--;
+        }
+    }
+
+    /**
+     * @return whether the update of the team is held back until the end of the tick
+     */
+    public static boolean defer(Team team) {
+        if (depth == 0 || flushing) return false;
+        dirty.add(team);
+        return true;
+    }
+
+    public static boolean isFlushing() {
+        return flushing;
+    }
+
+    private static void flush(MinecraftServer server) {
+        if (dirty.isEmpty()) return;
+
+        ServerScoreboard scoreboard = server.getScoreboard();
+        flushing = true;
+        try {
+            for (Team team : dirty) {
+                // teams that were removed in the meantime have already been removed on the clients
+                if (scoreboard.getTeam(team.getName()) == team) {
+                    scoreboard.updateScoreboardTeam(team);
+                }
+            }
+        } finally {
+            flushing = false;
+            dirty.clear();
+        }
+    }
+}
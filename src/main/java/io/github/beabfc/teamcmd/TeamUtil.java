@@ -1,107 +1,270 @@
 package io.github.beabfc.teamcmd;
 
-import net.luckperms.api.LuckPermsProvider;
-import net.luckperms.api.model.user.User;
+import io.github.beabfc.teamcmd.api.GuildEvents;
+import io.github.beabfc.teamcmd.cluster.GuildChatRelay;
+import io.github.beabfc.teamcmd.metrics.GuildChatEvent;
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import io.github.beabfc.teamcmd.metrics.InviteTickEvent;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import net.minecraft.network.message.ChatVisibility;
+import net.minecraft.network.packet.Packet;
+import net.minecraft.network.packet.s2c.play.GameMessageS2CPacket;
+import net.minecraft.scoreboard.AbstractTeam;
 import net.minecraft.scoreboard.Team;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
 import java.util.*;
+import java.util.function.ObjIntConsumer;
 
 public abstract class TeamUtil {
     private static final int TPS = 20;
     private static final int TIMEOUT = 120;
-    private static final HashMap<UUID, TeamInvite> inviteMap = new HashMap<>();
-    public static final HashMap<UUID, Boolean> guildChatToggleMap = new HashMap<>();
+    private static final PriorityQueue<TeamInvite> inviteQueue =
+        new PriorityQueue<>(Comparator.comparingInt(TeamInvite::getDeadline));
 
     public static void sendToTeammates(ServerPlayerEntity player, Text message) {
-        MinecraftServer server = player.getServer();
-        if (server == null) return;
-        for (ServerPlayerEntity otherPlayer : server.getPlayerManager().getPlayerList()) {
-            if (otherPlayer.isTeammate(player) && !otherPlayer.equals(player)) {
-                otherPlayer.sendMessage(message);
+        AbstractTeam team = player.getScoreboardTeam();
+        if (team == null) return;
+        broadcast(team, new GameMessageS2CPacket(message, false), player.networkHandler);
+    }
+
+    public static void sendToTeam(AbstractTeam team, Text message) {
+        broadcast(team, new GameMessageS2CPacket(message, false), null);
+    }
+
+    /**
+     * Sends a message to the online members of the senders guild and of every allied guild that takes part in the
+     * alliance chat and has not used up its guild chat limit, here and on the other servers of the network.
+     */
+    public static void sendAllianceChat(ServerPlayerEntity sender, String message) {
+        AbstractTeam team = sender.getScoreboardTeam();
+        if (team == null) return;
+        Packet<?> packet = new GameMessageS2CPacket(getAllianceChatFormat((Team) team, sender.getDisplayName(),
+            message), false);
+        deliverGuildChat(team, (Team) team, packet, sender.getEntityName(), message, false);
+        GuildChatRelay.publish(team, team, sender.getDisplayName(), sender.getEntityName(), message);
+        for (Team ally : GuildRelations.getAllianceChatMembers(team)) {
+            if (!GuildChatLimits.tryAcquireGuild(ally)) continue;
+            deliverGuildChat(ally, (Team) team, packet, sender.getEntityName(), message, false);
+            GuildChatRelay.publish(ally, team, sender.getDisplayName(), sender.getEntityName(), message);
+        }
+    }
+
+    /**
+     * Sends a guild chat message to every online member of the senders guild, including the sender, and to the
+     * members on the other servers of the network.
+     */
+    public static void sendGuildChat(ServerPlayerEntity sender, String message) {
+        AbstractTeam team = sender.getScoreboardTeam();
+        if (team == null) return;
+        deliverGuildChat(team, null, new GameMessageS2CPacket(getGuildChatFormat(sender, message), false),
+            sender.getEntityName(), message, false);
+        GuildChatRelay.publish(team, null, sender.getDisplayName(), sender.getEntityName(), message);
+    }
+
+    /**
+     * Shows a guild chat message that was sent on another server to the local members of the guild.
+     *
+     * @param alliance the guild of the sender if it was an alliance chat message, otherwise {@code null}
+     */
+    public static void sendRelayedGuildChat(AbstractTeam team, Team alliance, Text senderName,
+                                            String senderPlainName, String message) {
+        Text text = alliance == null ? getGuildChatFormat(senderName, team.getColor(), message)
+            : getAllianceChatFormat(alliance, senderName, message);
+        deliverGuildChat(team, alliance, new GameMessageS2CPacket(text, false), senderPlainName, message, true);
+    }
+
+    // the one path every guild and alliance chat message takes to the members of a guild
+    private static void deliverGuildChat(AbstractTeam team, Team alliance, Packet<?> packet, String senderPlainName,
+                                         String message, boolean relayed) {
+        broadcast(team, packet, null);
+        GuildChatHistory.record(team, alliance, senderPlainName, message);
+        GuildEvents.CHAT.invoker().onChat((Team) team, senderPlainName, message, relayed);
+    }
+
+    /**
+     * Sends the same packet instance to every online member of a guild, so the message is only built once no
+     * matter how many members receive it.
+     */
+    private static void broadcast(AbstractTeam team, Packet<?> packet, ServerPlayNetworkHandler except) {
+        GuildChatEvent event = new GuildChatEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int recipients = 0;
+        for (ServerPlayNetworkHandler handler : GuildRoster.getOnlineMembers(team)) {
+            if (handler != except && handler.player.getClientChatVisibility() != ChatVisibility.HIDDEN) {
+                handler.sendPacket(packet);
+                recipients++;
             }
         }
+        GuildMetrics.recordFanOut(recipients, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.guild = team.getName();
+            event.recipients = recipients;
+            event.commit();
+        }
+    }
 
+    public static void addInvite(ServerPlayerEntity player, Team team) {
+        addInvite(player.getUuid(), GuildRegistry.getId(team), player.server.getTicks());
     }
 
-    public static void addInvite(ServerPlayerEntity player, String teamName) {
-        inviteMap.put(player.getUuid(), new TeamInvite(teamName));
+    static void addInvite(UUID playerUuid, int teamId, int currentTick) {
+        TeamInvite invite = new TeamInvite(playerUuid, teamId, currentTick + TIMEOUT * TPS);
+        // re-inviting replaces the old invite and makes it the most recent one
+        GuildSessions.getOrCreate(playerUuid).invites.putAndMoveToLast(teamId, invite);
+        inviteQueue.add(invite);
     }
 
-    public static String getInvitedTeam(ServerPlayerEntity player) {
-        TeamInvite invite = inviteMap.get(player.getUuid());
-        if (invite != null) return invite.getTeamName();
-        return null;
+    /**
+     * @return the guild of the most recent invite or {@code null}
+     */
+    public static Team getInvitedTeam(ServerPlayerEntity player) {
+        GuildSession session = GuildSessions.get(player.getUuid());
+        if (session == null || session.invites.isEmpty()) return null;
+        return GuildRegistry.getTeam(session.invites.lastIntKey());
     }
 
-    public static void resetInvite(ServerPlayerEntity player) {
-        inviteMap.remove(player.getUuid());
+    public static boolean isInvited(ServerPlayerEntity player, Team team) {
+        GuildSession session = GuildSessions.get(player.getUuid());
+        return session != null && session.invites.containsKey(GuildRegistry.getId(team));
     }
 
+    public static Collection<String> getInvitedTeams(ServerPlayerEntity player) {
+        GuildSession session = GuildSessions.get(player.getUuid());
+        if (session == null) return Collections.emptySet();
+        List<String> teamNames = new ArrayList<>(session.invites.size());
+        IntIterator iterator = session.invites.keySet().iterator();
+        while (iterator.hasNext()) {
+            teamNames.add(GuildRegistry.getTeam(iterator.nextInt()).getName());
+        }
+        return teamNames;
+    }
+
+    /**
+     * Drops all invites to a removed guild, its id may be given to the next new guild.
+     */
+    public static void onTeamRemoved(Team team) {
+        int teamId = GuildRegistry.getId(team);
+        for (GuildSession session : GuildSessions.getAll()) {
+            session.invites.remove(teamId);
+        }
+    }
+
+    public static void resetInvites(ServerPlayerEntity player) {
+        GuildSession session = GuildSessions.get(player.getUuid());
+        if (session != null) session.invites.clear();
+    }
+
+    /**
+     * Counts the pending invites of all players. The expiry queue is not used for this, it still holds invites that
+     * were accepted, replaced or dropped until their deadline passes.
+     */
+    public static int getQueuedInvites() {
+        int queued = 0;
+        for (GuildSession session : GuildSessions.getAll()) {
+            queued += session.invites.size();
+        }
+        return queued;
+    }
 
     public static void tick(MinecraftServer server) {
-        List<UUID> toRemove = new ArrayList<>();
-        for (Map.Entry<UUID, TeamInvite> entry : inviteMap.entrySet()) {
-            TeamInvite invite = entry.getValue();
-
-            if (invite.isExpired()) {
-                UUID playerUuid = entry.getKey();
-                toRemove.add(playerUuid);
-                ServerPlayerEntity player = server.getPlayerManager().getPlayer(playerUuid);
-                if (player != null) {
-                    Team team = player.getScoreboard().getTeam(invite.getTeamName());
-                    if (team != null) {
-                        player.sendMessage(Text.translatable("commands.teamcmd.invite_expired",
-                            team.getFormattedName()));
-                    }
-                }
-            }
+        long start = System.nanoTime();
+        TeamInvite next = inviteQueue.peek();
+        if (next == null || next.getDeadline() > server.getTicks()) {
+            GuildMetrics.recordInviteTick(System.nanoTime() - start);
+            return;
+        }
 
-            invite.hasTicked();
+        InviteTickEvent event = new InviteTickEvent();
+        event.begin();
+        int expired = expireInvites(server.getTicks(), (playerUuid, teamId) -> {
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(playerUuid);
+            Team team = GuildRegistry.getTeam(teamId);
+            if (player != null && team != null) {
+                player.sendMessage(Text.translatable("commands.teamcmd.invite_expired", team.getFormattedName()));
+            }
+        });
+        GuildMetrics.recordInviteTick(System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.expired = expired;
+            event.queued = getQueuedInvites();
+            event.commit();
         }
-        for (UUID uuid : toRemove) {
-            inviteMap.remove(uuid);
+    }
+
+    /**
+     * Removes every invite whose deadline has passed. Only invites that are actually due are visited, invites that
+     * were accepted or replaced in the meantime are dropped from the queue without notifying anyone.
+     *
+     * @return the number of expired invites
+     */
+    static int expireInvites(int currentTick, ObjIntConsumer<UUID> onExpired) {
+        int expired = 0;
+        TeamInvite invite;
+        while ((invite = inviteQueue.peek()) != null && invite.getDeadline() <= currentTick) {
+            inviteQueue.poll();
+            // the session is gone if the player logged out, which also drops their invites
+            GuildSession session = GuildSessions.get(invite.getPlayerUuid());
+            if (session == null || session.invites.get(invite.getTeamId()) != invite) continue;
+
+            session.invites.remove(invite.getTeamId());
+            onExpired.accept(invite.getPlayerUuid(), invite.getTeamId());
+            expired++;
         }
+        return expired;
     }
 
     public static boolean isOwner(ServerPlayerEntity player, Team team) {
+        return GuildOwners.isOwner(player.getUuid(), team);
+    }
 
-        User user = LuckPermsProvider.get().getUserManager().getUser(player.getUuid());
-        List<String> metaTeam = user.getCachedData().getMetaData().getMeta().get("guild-owner");
+    public static MutableText getGuildChatFormat(ServerPlayerEntity player, String message) {
+        return getGuildChatFormat(player.getDisplayName(), player.getScoreboardTeam().getColor(), message);
+    }
 
-        if (metaTeam == null) return false;
-        return metaTeam.get(0).equals(team.getName());
+    public static MutableText getAllianceChatFormat(Team senderTeam, Text senderName, String message) {
+        return getAllianceChatFormat(senderTeam.getFormattedName(), senderTeam.getColor(), senderName, message);
     }
 
-    public static MutableText getGuildChatFormat(ServerPlayerEntity player, String message) {
-        MutableText display = player.getDisplayName().copy().formatted(player.getScoreboardTeam().getColor());
+    public static MutableText getAllianceChatFormat(Text guildName, Formatting color, Text senderName,
+                                                    String message) {
+        return Text.translatable("commands.teamcmd.allychat.prefix", guildName)
+            .formatted(Formatting.GRAY).append(getGuildChatFormat(senderName, color, message));
+    }
+
+    public static MutableText getGuildChatFormat(Text senderName, Formatting color, String message) {
+        MutableText display = senderName.copy().formatted(color);
 
-        return display.append(Text.of(" » ").copy().formatted(Formatting.DARK_GRAY).append(Text.literal(message)).formatted(player.getScoreboardTeam().getColor()));
+        return display.append(Text.of(" » ").copy().formatted(Formatting.DARK_GRAY).append(Text.literal(message)).formatted(color));
     }
 
-    private static class TeamInvite {
-        private final String teamName;
-        private int remainingTicks;
+    static class TeamInvite {
+        private final UUID playerUuid;
+        private final int teamId;
+        private final int deadline;
 
-        public TeamInvite(String teamName) {
-            this.remainingTicks = TIMEOUT * TPS;
-            this.teamName = teamName;
+        public TeamInvite(UUID playerUuid, int teamId, int deadline) {
+            this.playerUuid = playerUuid;
+            this.teamId = teamId;
+            this.deadline = deadline;
         }
 
-        public String getTeamName() {
-            return this.teamName;
+        public UUID getPlayerUuid() {
+            return this.playerUuid;
         }
 
-        public boolean isExpired() {
-            return this.remainingTicks <= 0;
+        public int getTeamId() {
+            return this.teamId;
         }
 
-        public void hasTicked() {
-            this.remainingTicks--;
+        public int getDeadline() {
+            return this.deadline;
         }
     }
 }
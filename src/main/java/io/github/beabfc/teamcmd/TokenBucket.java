@@ -0,0 +1,40 @@
+package io.github.beabfc.teamcmd;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in the form of the generic cell rate algorithm: instead of a token count only the time at
+ * which the bucket will be full again is stored, so a single compare-and-set is enough to take a token.
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param perMinute how many tokens are added per minute, {@code 0} or less disables the limit
+     * @param burst     how many tokens the bucket holds
+     * @return whether a token was taken
+     */
+    public boolean tryAcquire(long now, int perMinute, int burst) {
+        if (perMinute <= 0) return true;
+        long interval = NANOS_PER_MINUTE / perMinute;
+        long tolerance = interval * (Math.max(burst, 1) - 1);
+        while (true) {
+            long arrival = this.theoreticalArrival.get();
+            long start = arrival - now < 0 ? now : arrival;
+            if (start - now > tolerance) return false;
+            if (this.theoreticalArrival.compareAndSet(arrival, start + interval)) return true;
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire} for something that was not done after all.
+     *
+     * @param perMinute the same rate the token was taken with
+     */
+    public void refund(int perMinute) {
+        if (perMinute <= 0) return;
+        this.theoreticalArrival.addAndGet(-NANOS_PER_MINUTE / perMinute);
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.beabfc.teamcmd.api;
+
+import net.fabricmc.fabric.api.event.Event;
+import net.fabricmc.fabric.api.event.EventFactory;
+import net.minecraft.scoreboard.Team;
+
+import java.util.UUID;
+
+/**
+ * Events for integrations that follow guilds. They are fired on the server thread for changes made with the guild
+ * commands as well as with {@code /team}, by other mods or by replication from other servers. The callbacks get the
+ * vanilla objects directly instead of an event object, so firing an event never allocates, and while nothing is
+ * registered the invoker does nothing at all.
+ */
+public final class GuildEvents {
+
+    /**
+     * A team was added to the scoreboard. Its display name and color may still be set right after, which fires
+     * {@link #SETTINGS_CHANGED}.
+     */
+    public static final Event<Created> CREATED = EventFactory.createArrayBacked(Created.class, team -> {
+    }, listeners -> team -> {
+        for (Created listener : listeners) {
+            listener.onCreated(team);
+        }
+    });
+
+    public static final Event<MemberJoined> MEMBER_JOINED = EventFactory.createArrayBacked(MemberJoined.class,
+        (team, member) -> {
+        }, listeners -> (team, member) -> {
+            for (MemberJoined listener : listeners) {
+                listener.onMemberJoined(team, member);
+            }
+        });
+
+    /**
+     * A member left or was kicked. Not fired for the members of a disbanded guild, see {@link #DISBANDED}.
+     */
+    public static final Event<MemberLeft> MEMBER_LEFT = EventFactory.createArrayBacked(MemberLeft.class,
+        (team, member) -> {
+        }, listeners -> (team, member) -> {
+            for (MemberLeft listener : listeners) {
+                listener.onMemberLeft(team, member);
+            }
+        });
+
+    public static final Event<OwnerChanged> OWNER_CHANGED = EventFactory.createArrayBacked(OwnerChanged.class,
+        (teamName, previousOwner, owner) -> {
+        }, listeners -> (teamName, previousOwner, owner) -> {
+            for (OwnerChanged listener : listeners) {
+                listener.onOwnerChanged(teamName, previousOwner, owner);
+            }
+        });
+
+    /**
+     * A team was removed from the scoreboard. The team still lists its last members.
+     */
+    public static final Event<Disbanded> DISBANDED = EventFactory.createArrayBacked(Disbanded.class, team -> {
+    }, listeners -> team -> {
+        for (Disbanded listener : listeners) {
+            listener.onDisbanded(team);
+        }
+    });
+
+    /**
+     * The display name, color, prefix, suffix or any other option of a team changed. Fired once for every setter.
+     */
+    public static final Event<SettingsChanged> SETTINGS_CHANGED = EventFactory.createArrayBacked(
+        SettingsChanged.class, team -> {
+        }, listeners -> team -> {
+            for (SettingsChanged listener : listeners) {
+                listener.onSettingsChanged(team);
+            }
+        });
+
+    /**
+     * A guild chat message was shown to the online members of a guild.
+     */
+    public static final Event<Chat> CHAT = EventFactory.createArrayBacked(Chat.class,
+        (team, senderName, message, relayed) -> {
+        }, listeners -> (team, senderName, message, relayed) -> {
+            for (Chat listener : listeners) {
+                listener.onChat(team, senderName, message, relayed);
+            }
+        });
+
+    private GuildEvents() {
+    }
+
+    @FunctionalInterface
+    public interface Created {
+        void onCreated(Team team);
+    }
+
+    @FunctionalInterface
+    public interface MemberJoined {
+        void onMemberJoined(Team team, String member);
+    }
+
+    @FunctionalInterface
+    public interface MemberLeft {
+        void onMemberLeft(Team team, String member);
+    }
+
+    @FunctionalInterface
+    public interface OwnerChanged {
+        /**
+         * @param previousOwner {@code null} if the guild had no owner
+         * @param owner         {@code null} if the guild has no owner anymore
+         */
+        void onOwnerChanged(String teamName, UUID previousOwner, UUID owner);
+    }
+
+    @FunctionalInterface
+    public interface Disbanded {
+        void onDisbanded(Team team);
+    }
+
+    @FunctionalInterface
+    public interface SettingsChanged {
+        void onSettingsChanged(Team team);
+    }
+
+    @FunctionalInterface
+    public interface Chat {
+        /**
+         * @param senderName the plain name of the sender
+         * @param relayed    whether the message was sent on another server
+         */
+        void onChat(Team team, String senderName, String message, boolean relayed);
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.beabfc.teamcmd.api;
+
+import io.github.beabfc.teamcmd.GuildRegistry;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * All guilds at the end of a tick. A snapshot never changes after it has been published. The views are kept in chunks
+ * indexed by guild id; a new snapshot only copies the chunks of guilds that changed and shares all other chunks with
+ * the previous one. The index from team name to id is only copied when guilds were created or removed.
+ */
+public final class GuildSnapshot {
+    static final int CHUNK_BITS = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final GuildSnapshot EMPTY = new GuildSnapshot(0, 0, new GuildView[0][], newIndex());
+
+    private final long version;
+    private final int tick;
+    final GuildView[][] chunks;
+    final Object2IntOpenHashMap<String> ids;
+
+    GuildSnapshot(long version, int tick, GuildView[][] chunks, Object2IntOpenHashMap<String> ids) {
+        this.version = version;
+        this.tick = tick;
+        this.chunks = chunks;
+        this.ids = ids;
+    }
+
+    static Object2IntOpenHashMap<String> newIndex() {
+        Object2IntOpenHashMap<String> ids = new Object2IntOpenHashMap<>();
+        ids.defaultReturnValue(GuildRegistry.NO_ID);
+        return ids;
+    }
+
+    /**
+     * @return a number that increases with every published snapshot
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the server tick at the end of which the snapshot was taken
+     */
+    public int getTick() {
+        return this.tick;
+    }
+
+    /**
+     * @return the guild with that team name or {@code null}
+     */
+    public GuildView get(String teamName) {
+        int id = this.ids.getInt(teamName);
+        if (id == GuildRegistry.NO_ID) return null;
+        GuildView[] chunk = this.chunks[id >>> CHUNK_BITS];
+        return chunk == null ? null : chunk[id & (CHUNK_SIZE - 1)];
+    }
+
+    int getId(String teamName) {
+        return this.ids.getInt(teamName);
+    }
+
+    /**
+     * @return the guilds ordered by id, unmodifiable
+     */
+    public Collection<GuildView> getGuilds() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<GuildView> iterator() {
+                return Arrays.stream(GuildSnapshot.this.chunks)
+                    .filter(Objects::nonNull)
+                    .flatMap(Arrays::stream)
+                    .filter(Objects::nonNull)
+                    .iterator();
+            }
+
+            @Override
+            public int size() {
+                return GuildSnapshot.this.ids.size();
+            }
+        };
+    }
+
+    public int size() {
+        return this.ids.size();
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.beabfc.teamcmd.api;
+
+import io.github.beabfc.teamcmd.GuildOwners;
+import io.github.beabfc.teamcmd.GuildRegistry;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.*;
+
+/**
+ * Publishes a {@link GuildSnapshot} at the end of every tick in which a guild changed. Reading the current snapshot
+ * is a single volatile read, so web maps, bots and exporters can query it as often as they like from their own
+ * threads without touching the scoreboard.
+ */
+public abstract class GuildSnapshots {
+    private static final Set<String> dirty = new HashSet<>();
+    private static volatile GuildSnapshot current = GuildSnapshot.EMPTY;
+
+    public static void register() {
+        GuildEvents.CREATED.register(team -> dirty.add(team.getName()));
+        GuildEvents.MEMBER_JOINED.register((team, member) -> dirty.add(team.getName()));
+        GuildEvents.MEMBER_LEFT.register((team, member) -> dirty.add(team.getName()));
+        GuildEvents.OWNER_CHANGED.register((teamName, previousOwner, owner) -> dirty.add(teamName));
+        GuildEvents.DISBANDED.register(team -> dirty.add(team.getName()));
+        GuildEvents.SETTINGS_CHANGED.register(team -> dirty.add(team.getName()));
+
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            for (Team team : server.getScoreboard().getTeams()) {
+                dirty.add(team.getName());
+            }
+        });
+        ServerTickEvents.END_SERVER_TICK.register(GuildSnapshots::publish);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            dirty.clear();
+            current = GuildSnapshot.EMPTY;
+        });
+    }
+
+    /**
+     * Can be called from any thread.
+     */
+    public static GuildSnapshot current() {
+        return current;
+    }
+
+    private static void publish(MinecraftServer server) {
+        if (dirty.isEmpty()) return;
+
+        GuildSnapshot previous = current;
+        int chunkCount = (GuildRegistry.capacity() + GuildSnapshot.CHUNK_SIZE - 1) >>> GuildSnapshot.CHUNK_BITS;
+        GuildView[][] chunks = Arrays.copyOf(previous.chunks, Math.max(previous.chunks.length, chunkCount));
+        boolean[] copied = new boolean[chunks.length];
+        Object2IntOpenHashMap<String> ids = previous.ids;
+        Scoreboard scoreboard = server.getScoreboard();
+
+        // removals first, the id of a removed guild may already belong to a guild created in the same tick
+        for (String teamName : dirty) {
+            int oldId = previous.getId(teamName);
+            if (oldId == GuildRegistry.NO_ID) continue;
+            Team team = scoreboard.getTeam(teamName);
+            if (team != null && GuildRegistry.getId(team) == oldId) continue;
+            chunk(chunks, copied, oldId)[oldId & (GuildSnapshot.CHUNK_SIZE - 1)] = null;
+            if (ids == previous.ids) ids = previous.ids.clone();
+            ids.removeInt(teamName);
+        }
+        for (String teamName : dirty) {
+            Team team = scoreboard.getTeam(teamName);
+            int id = GuildRegistry.getId(team);
+            if (id == GuildRegistry.NO_ID) continue;
+            chunk(chunks, copied, id)[id & (GuildSnapshot.CHUNK_SIZE - 1)] = view(team);
+            if (ids.getInt(teamName) != id) {
+                if (ids == previous.ids) ids = previous.ids.clone();
+                ids.put(teamName, id);
+            }
+        }
+        dirty.clear();
+        current = new GuildSnapshot(previous.getVersion() + 1, server.getTicks(), chunks, ids);
+    }
+
+    // chunks are copied at most once per snapshot, the previous snapshot keeps the original
+    private static GuildView[] chunk(GuildView[][] chunks, boolean[] copied, int id) {
+        int index = id >>> GuildSnapshot.CHUNK_BITS;
+        if (!copied[index]) {
+            GuildView[] chunk = chunks[index];
+            chunks[index] = chunk == null ? new GuildView[GuildSnapshot.CHUNK_SIZE] : chunk.clone();
+            copied[index] = true;
+        }
+        return chunks[index];
+    }
+
+    private static GuildView view(Team team) {
+        return new GuildView(team.getName(), team.getDisplayName().getString(), team.getColor(),
+            team.isFriendlyFireAllowed(), team.shouldShowFriendlyInvisibles(), GuildOwners.getOwner(team.getName()),
+            List.copyOf(team.getPlayerList()));
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.beabfc.teamcmd.api;
+
+import net.minecraft.util.Formatting;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The state of a guild at the end of a tick. Views are immutable and can be kept and read on any thread.
+ *
+ * @param owner   {@code null} if the guild has no owner
+ * @param members the scoreboard names of the members, unmodifiable
+ */
+public record GuildView(String name, String displayName, Formatting color, boolean friendlyFire,
+                        boolean seeInvisibles, UUID owner, List<String> members) {
+}
@@ -0,0 +1,26 @@
+package io.github.beabfc.teamcmd.audit;
+
+/**
+ * A single administrative action on a guild. {@code target} and {@code detail} are empty if the action has none.
+ */
+public record AuditEntry(long time, String action, String actor, String guild, String target, String detail) {
+
+    String toLine() {
+        return this.time + "\t" + clean(this.action) + "\t" + clean(this.actor) + "\t" + clean(this.guild) + "\t" +
+            clean(this.target) + "\t" + clean(this.detail) + "\n";
+    }
+
+    static AuditEntry parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length < 6) return null;
+        try {
+            return new AuditEntry(Long.parseLong(fields[0]), fields[1], fields[2], fields[3], fields[4], fields[5]);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static String clean(String field) {
+        return field == null ? "" : field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,421 @@
+package io.github.beabfc.teamcmd.audit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Audit log files with an index for lookups by guild and player. Entries are handed to a background thread which
+ * writes everything that has queued up in one go. A new file is started every day and whenever a file grows beyond
+ * the size limit. Next to every log file is an index file with the offset of each entry under its lookup keys. Only
+ * the indexes of the newest {@link #MAX_INDEXED_FILES} files are kept in memory, older ones are read from disk, newest
+ * first, until the requested page is full.
+ */
+public class AuditJournal {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAX_QUEUED = 65536;
+    private static final int MAX_BATCH = 1024;
+    private static final int MAX_INDEXED_FILES = 16;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final AuditEntry STOP = new AuditEntry(0, "", "", "", "", "");
+
+    private final Path directory;
+    private final long maxFileSize;
+    private final BlockingQueue<AuditEntry> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private final ExecutorService queries = Executors.newSingleThreadExecutor(runnable -> daemon(runnable,
+        "TeamCommand Audit Query"));
+    // guards the index and the current files between the writer and the query thread
+    private final Object lock = new Object();
+    private final Map<String, List<Location>> index = new HashMap<>();
+    // oldest first
+    private final Deque<String> indexedFiles = new ArrayDeque<>();
+    private final List<String> archivedFiles = new ArrayList<>();
+    private Thread writer;
+    private LocalDate currentDate;
+    private int currentPart;
+    private String currentName;
+    private OutputStream log;
+    private DataOutputStream indexOut;
+    private long position;
+
+    public AuditJournal(Path directory, long maxFileSize) {
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(this.directory);
+        loadIndex();
+        this.writer = daemon(this::run, "TeamCommand Audit Writer");
+        this.writer.start();
+    }
+
+    /**
+     * Never blocks, entries are dropped if the writer has fallen too far behind.
+     *
+     * @return whether the entry was queued
+     */
+    public boolean offer(AuditEntry entry) {
+        return this.queue.offer(entry);
+    }
+
+    /**
+     * Looks up the entries of a guild or player in the background.
+     *
+     * @param page starting with the most recent entries at page 1
+     */
+    public CompletableFuture<Page> query(String key, int page, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> {
+            // the files are read without holding the lock, so the writer never waits for a lookup
+            List<Location> recent;
+            List<String> archived;
+            synchronized (this.lock) {
+                recent = new ArrayList<>(this.index.getOrDefault(key, Collections.emptyList()));
+                archived = new ArrayList<>(this.archivedFiles);
+            }
+
+            int first = (page - 1) * pageSize;
+            List<Location> selected = new ArrayList<>(pageSize);
+            int total = select(recent, 0, first, first + pageSize, selected);
+            // older files are only read until the page is full and it is known whether there is a next one
+            int i = archived.size() - 1;
+            for (; i >= 0 && total <= first + pageSize; i--) {
+                String name = archived.get(i);
+                List<Location> locations = new ArrayList<>();
+                try {
+                    readIndex(name, Long.MAX_VALUE, (entryKey, offset) -> {
+                        if (entryKey.equals(key)) locations.add(new Location(name, offset));
+                    });
+                } catch (IOException ex) {
+                    LOGGER.warn("Could not read audit index {}", name, ex);
+                }
+                total = select(locations, total, first, first + pageSize, selected);
+            }
+
+            List<AuditEntry> entries = new ArrayList<>(selected.size());
+            for (Location location : selected) {
+                AuditEntry entry = read(location);
+                if (entry != null) entries.add(entry);
+            }
+            return new Page(entries, total, i < 0);
+        }, this.queries);
+    }
+
+    /**
+     * Counts the locations, newest first, and picks those whose position is between {@code first} and {@code end}.
+     *
+     * @return the position after the last location
+     */
+    private static int select(List<Location> locations, int position, int first, int end, List<Location> selected) {
+        for (int i = locations.size() - 1; i >= 0; i--, position++) {
+            if (position >= first && position < end) selected.add(locations.get(i));
+        }
+        return position;
+    }
+
+    public void close() {
+        if (this.writer == null) return;
+        // the stop marker must not be dropped even if the queue is full
+        try {
+            this.queue.put(STOP);
+            this.writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        this.queries.shutdown();
+        synchronized (this.lock) {
+            closeFiles();
+        }
+    }
+
+    private void run() {
+        List<AuditEntry> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            this.queue.drainTo(batch, MAX_BATCH);
+            running = !batch.removeIf(entry -> entry == STOP);
+
+            synchronized (this.lock) {
+                try {
+                    for (AuditEntry entry : batch) {
+                        write(entry);
+                    }
+                    this.log.flush();
+                    this.indexOut.flush();
+                } catch (IOException ex) {
+                    LOGGER.error("Could not write {} audit entries", batch.size(), ex);
+                    closeFiles();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(AuditEntry entry) throws IOException {
+        LocalDate date = Instant.ofEpochMilli(entry.time()).atZone(ZoneId.systemDefault()).toLocalDate();
+        if (this.log == null || !date.equals(this.currentDate) || this.position >= this.maxFileSize) {
+            rotate(date);
+        }
+
+        byte[] line = entry.toLine().getBytes(StandardCharsets.UTF_8);
+        Location location = new Location(this.currentName, this.position);
+        for (String key : keys(entry)) {
+            this.indexOut.writeUTF(key);
+            this.indexOut.writeLong(this.position);
+            this.index.computeIfAbsent(key, k -> new ArrayList<>()).add(location);
+        }
+        this.log.write(line);
+        this.position += line.length;
+    }
+
+    private void rotate(LocalDate date) throws IOException {
+        closeFiles();
+        if (!date.equals(this.currentDate)) {
+            this.currentDate = date;
+            this.currentPart = 0;
+        }
+        // continue the latest file of the day after a restart as long as it has room
+        while (true) {
+            this.currentName = "audit-" + date + (this.currentPart == 0 ? "" : "." + this.currentPart);
+            Path logFile = this.directory.resolve(this.currentName + LOG_SUFFIX);
+            this.position = Files.exists(logFile) ? Files.size(logFile) : 0;
+            Path nextFile = this.directory.resolve("audit-" + date + "." + (this.currentPart + 1) + LOG_SUFFIX);
+            if (this.position < this.maxFileSize && !Files.exists(nextFile)) break;
+            this.currentPart++;
+        }
+        if (!this.currentName.equals(this.indexedFiles.peekLast())) {
+            this.indexedFiles.addLast(this.currentName);
+            if (this.indexedFiles.size() > MAX_INDEXED_FILES) archive(this.indexedFiles.removeFirst());
+        }
+        this.log = new BufferedOutputStream(new FileOutputStream(
+            this.directory.resolve(this.currentName + LOG_SUFFIX).toFile(), true));
+        this.indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            this.directory.resolve(this.currentName + INDEX_SUFFIX).toFile(), true)));
+    }
+
+    private void closeFiles() {
+        try {
+            if (this.log != null) this.log.close();
+            if (this.indexOut != null) this.indexOut.close();
+        } catch (IOException ex) {
+            LOGGER.error("Could not close the audit log", ex);
+        }
+        this.log = null;
+        this.indexOut = null;
+    }
+
+    private void loadIndex() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(INDEX_SUFFIX))
+                .forEach(name -> names.add(name.substring(0, name.length() - INDEX_SUFFIX.length())));
+        }
+        names.sort(Comparator.comparing(AuditJournal::sortKey));
+
+        int firstIndexed = Math.max(0, names.size() - MAX_INDEXED_FILES);
+        this.archivedFiles.addAll(names.subList(0, firstIndexed));
+        for (String name : names.subList(firstIndexed, names.size())) {
+            this.indexedFiles.addLast(name);
+            // only the latest file is appended to after a restart, so only it can have a torn end
+            boolean latest = name.equals(names.get(names.size() - 1));
+            long logLength = latest ? truncateLog(name) : Long.MAX_VALUE;
+            long indexLength = readIndex(name, logLength, (key, offset) ->
+                this.index.computeIfAbsent(key, k -> new ArrayList<>()).add(new Location(name, offset)));
+            if (latest) truncate(this.directory.resolve(name + INDEX_SUFFIX), indexLength);
+        }
+    }
+
+    /**
+     * Reads the index of a file up to its end, an incomplete last entry or the first entry at or beyond
+     * {@code logLength}.
+     *
+     * @return the length of the entries that were read
+     */
+    private long readIndex(String name, long logLength, IndexVisitor visitor) throws IOException {
+        Path file = this.directory.resolve(name + INDEX_SUFFIX);
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        long length = 0;
+        try (DataInputStream in = new DataInputStream(counter)) {
+            while (true) {
+                String key = in.readUTF();
+                long offset = in.readLong();
+                if (offset >= logLength) break;
+                visitor.visit(key, offset);
+                length = counter.count;
+            }
+        } catch (EOFException ex) {
+            // end of the index, possibly with an incomplete last entry
+        }
+        return length;
+    }
+
+    /**
+     * Cuts off an incomplete last line of a log, which a crash during a write leaves behind.
+     *
+     * @return the length of the complete lines
+     */
+    private long truncateLog(String name) throws IOException {
+        Path file = this.directory.resolve(name + LOG_SUFFIX);
+        if (!Files.exists(file)) return 0;
+        long length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            length = completeLength(channel);
+        }
+        truncate(file, length);
+        return length;
+    }
+
+    // the position after the last line break
+    private static long completeLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // read until the chunk is full
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') return start + i + 1;
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    // the files are appended to after a restart, anything left after a torn entry would misalign the new ones
+    private static void truncate(Path file, long length) throws IOException {
+        if (!Files.exists(file)) return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > length) {
+                LOGGER.warn("Cutting off {} bytes of an incomplete entry at the end of {}", channel.size() - length,
+                    file.getFileName());
+                channel.truncate(length);
+            }
+        }
+    }
+
+    // the locations of a file are the oldest of every list, as files are indexed in order
+    private void archive(String name) {
+        this.archivedFiles.add(name);
+        this.index.values().removeIf(locations -> {
+            int count = 0;
+            while (count < locations.size() && locations.get(count).file().equals(name)) {
+                count++;
+            }
+            locations.subList(0, count).clear();
+            return locations.isEmpty();
+        });
+    }
+
+    private AuditEntry read(Location location) {
+        try (RandomAccessFile file = new RandomAccessFile(
+            this.directory.resolve(location.file() + LOG_SUFFIX).toFile(), "r")) {
+            file.seek(location.offset());
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = file.read()) != -1 && b != '\n') {
+                line.write(b);
+            }
+            return AuditEntry.parse(line.toString(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            LOGGER.warn("Could not read audit entry from {}", location.file(), ex);
+            return null;
+        }
+    }
+
+    // files of the same day sort by their part number, which is not the same as sorting by name
+    private static String sortKey(String name) {
+        int part = name.indexOf('.');
+        if (part < 0) return name + ".000000";
+        return name.substring(0, part) + "." + String.format("%06d", Integer.parseInt(name.substring(part + 1)));
+    }
+
+    static List<String> keys(AuditEntry entry) {
+        List<String> keys = new ArrayList<>(3);
+        keys.add(guildKey(entry.guild()));
+        if (!entry.actor().isEmpty()) keys.add(playerKey(entry.actor()));
+        if (!entry.target().isEmpty() && !entry.target().equalsIgnoreCase(entry.actor())) {
+            keys.add(playerKey(entry.target()));
+        }
+        return keys;
+    }
+
+    public static String guildKey(String guild) {
+        return "g:" + guild.toLowerCase(Locale.ROOT);
+    }
+
+    public static String playerKey(String player) {
+        return "p:" + player.toLowerCase(Locale.ROOT);
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private record Location(String file, long offset) {
+    }
+
+    @FunctionalInterface
+    private interface IndexVisitor {
+        void visit(String key, long offset);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) this.count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) this.count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * @param total    the number of entries, only a lower bound if not {@code complete}
+     * @param complete whether all files were looked at, otherwise there are more entries than the page shows
+     */
+    public record Page(List<AuditEntry> entries, int total, boolean complete) {
+    }
+}
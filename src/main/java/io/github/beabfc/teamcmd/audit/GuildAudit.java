@@ -0,0 +1,72 @@
+package io.github.beabfc.teamcmd.audit;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.WorldSavePath;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records administrative guild actions in the {@link AuditJournal} of the world. Recording only queues the entry,
+ * the server thread never waits for the disk.
+ */
+public abstract class GuildAudit {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String DIRECTORY = "teamcmd/audit";
+    private static final long MAX_FILE_SIZE = 8L << 20;
+
+    private static AuditJournal journal;
+    private static long dropped;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(GuildAudit::start);
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> stop());
+    }
+
+    public static void record(String action, ServerPlayerEntity actor, String guild) {
+        record(action, actor, guild, "", "");
+    }
+
+    public static void record(String action, ServerPlayerEntity actor, String guild, String target, String detail) {
+        record(action, actor.getEntityName(), guild, target, detail);
+    }
+
+    /**
+     * @param actor the name of the player or of the part of the server that did the action
+     */
+    public static void record(String action, String actor, String guild, String target, String detail) {
+        if (journal == null) return;
+        if (!journal.offer(new AuditEntry(System.currentTimeMillis(), action, actor, guild, target, detail))
+            && dropped++ % 1000 == 0) {
+            LOGGER.warn("The audit log can't keep up, {} entries have been dropped", dropped);
+        }
+    }
+
+    public static CompletableFuture<AuditJournal.Page> query(String key, int page, int pageSize) {
+        if (journal == null) return CompletableFuture.completedFuture(new AuditJournal.Page(List.of(), 0, true));
+        return journal.query(key, page, pageSize);
+    }
+
+    private static void start(MinecraftServer server) {
+        AuditJournal auditJournal = new AuditJournal(server.getSavePath(WorldSavePath.ROOT).resolve(DIRECTORY),
+            MAX_FILE_SIZE);
+        try {
+            auditJournal.start();
+            journal = auditJournal;
+        } catch (IOException ex) {
+            LOGGER.error("Could not open the audit log, guild actions will not be recorded", ex);
+        }
+    }
+
+    private static void stop() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
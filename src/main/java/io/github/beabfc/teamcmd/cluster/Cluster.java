@@ -0,0 +1,152 @@
+package io.github.beabfc.teamcmd.cluster;
+
+import io.github.beabfc.teamcmd.Config;
+import io.github.beabfc.teamcmd.TeamCommand;
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.server.MinecraftServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the {@link ClusterTransport} of this server and dispatches incoming messages to the handler of their channel
+ * on the server thread. If the server thread falls behind, messages beyond {@link #MAX_PENDING} are dropped instead
+ * of piling up.
+ */
+public abstract class Cluster {
+    public static final byte CHAT = 1;
+    public static final byte REPLICATION = 2;
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAX_PENDING = 1024;
+
+    private static final ConcurrentHashMap<Byte, Handler> handlers = new ConcurrentHashMap<>();
+    private static final AtomicInteger pending = new AtomicInteger();
+    private static volatile MinecraftServer server;
+    private static ClusterTransport transport;
+    private static String serverId;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(Cluster::start);
+        ServerLifecycleEvents.SERVER_STOPPING.register(minecraftServer -> stop());
+    }
+
+    public static void registerHandler(byte channel, Handler handler) {
+        handlers.put(channel, handler);
+    }
+
+    /**
+     * Replaces the transport that is created from the config, must be called before the server starts.
+     */
+    public static void setTransport(ClusterTransport clusterTransport) {
+        transport = clusterTransport;
+    }
+
+    public static boolean isRunning() {
+        return server != null && transport != null;
+    }
+
+    /**
+     * @return the configured id of this server or a random one, unique within the network
+     */
+    public static String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * @return the server while the relay is running, for handlers that need it
+     */
+    public static MinecraftServer getServer() {
+        return server;
+    }
+
+    public static boolean broadcast(byte channel, byte[] payload) {
+        return isRunning() && transport.broadcast(channel, payload);
+    }
+
+    public static boolean send(String peer, byte channel, byte[] payload) {
+        return isRunning() && transport.send(peer, channel, payload);
+    }
+
+    private static void start(MinecraftServer minecraftServer) {
+        Config config = TeamCommand.getConfig();
+        if (!config.relayEnabled) return;
+
+        serverId = config.relayServerId.isEmpty() ? UUID.randomUUID().toString() : config.relayServerId;
+        if (transport == null) {
+            InetSocketAddress bindAddress = config.relayPort > 0 ?
+                new InetSocketAddress(config.relayHost, config.relayPort) : null;
+            transport = new TcpTransport(bindAddress, config.relayPeers, config.relayQueueSize);
+        }
+        // set first, peers may already connect while the transport is starting
+        server = minecraftServer;
+        try {
+            transport.start(new Dispatcher());
+            LOGGER.info("Started guild relay as {} with {} peers", serverId, config.relayPeers.size());
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.error("Could not start the guild relay", ex);
+            server = null;
+            transport.close();
+            transport = null;
+        }
+    }
+
+    private static void stop() {
+        server = null;
+        if (transport != null) {
+            transport.close();
+            transport = null;
+        }
+        pending.set(0);
+    }
+
+    public interface Handler {
+
+        /**
+         * Called on the server thread.
+         */
+        void onMessage(byte[] payload);
+
+        /**
+         * Called on the server thread once a connection to the peer has been established.
+         */
+        default void onPeerConnected(String peer) {
+        }
+    }
+
+    private static class Dispatcher implements ClusterTransport.Listener {
+
+        @Override
+        public void onMessage(byte channel, byte[] payload) {
+            Handler handler = handlers.get(channel);
+            if (handler != null) execute(() -> handler.onMessage(payload));
+        }
+
+        @Override
+        public void onPeerConnected(String peer) {
+            for (Handler handler : handlers.values()) {
+                execute(() -> handler.onPeerConnected(peer));
+            }
+        }
+
+        private void execute(Runnable task) {
+            MinecraftServer minecraftServer = server;
+            if (minecraftServer == null) return;
+            if (pending.incrementAndGet() > MAX_PENDING) {
+                pending.decrementAndGet();
+                GuildMetrics.recordRelayDropped(1);
+                return;
+            }
+            minecraftServer.execute(() -> {
+                pending.decrementAndGet();
+                task.run();
+            });
+        }
+    }
+}
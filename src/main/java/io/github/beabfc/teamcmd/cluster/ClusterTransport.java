@@ -0,0 +1,32 @@
+package io.github.beabfc.teamcmd.cluster;
+
+import java.io.IOException;
+
+/**
+ * Connection to the other servers of a network. Messages are opaque payloads on a numbered channel, delivery is at
+ * most once and in order per peer. Implementations must never block the caller; when a peer can't keep up, messages
+ * to it are dropped and {@code false} is returned.
+ */
+public interface ClusterTransport {
+
+    void start(Listener listener) throws IOException;
+
+    boolean broadcast(byte channel, byte[] payload);
+
+    boolean send(String peer, byte channel, byte[] payload);
+
+    void close();
+
+    interface Listener {
+
+        /**
+         * Called on a transport thread for every message received from any peer.
+         */
+        void onMessage(byte channel, byte[] payload);
+
+        /**
+         * Called on a transport thread whenever the connection to a peer has been (re-)established.
+         */
+        void onPeerConnected(String peer);
+    }
+}
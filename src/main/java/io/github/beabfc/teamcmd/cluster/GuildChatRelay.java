@@ -0,0 +1,142 @@
+package io.github.beabfc.teamcmd.cluster;
+
+import io.github.beabfc.teamcmd.TeamCommand;
+import io.github.beabfc.teamcmd.TeamUtil;
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.scoreboard.AbstractTeam;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.text.Text;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Relays guild chat to the other servers of the network. Messages sent during a tick are sent as one batch at the
+ * end of it, so the added latency is at most one tick plus the network. Every message carries the id of its origin
+ * server, a random epoch chosen when the server starts and a sequence number; messages that have been seen before are
+ * not shown twice. The epoch keeps a restarted server from reusing the keys of its earlier messages.
+ */
+public abstract class GuildChatRelay {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int SEEN_CAPACITY = 4096;
+
+    private static final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    // a message is encoded here first, so a failure halfway never leaves part of it in the batch
+    private static final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+    private static final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private static final Map<String, Boolean> seen = new LinkedHashMap<>(SEEN_CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return this.size() > SEEN_CAPACITY;
+        }
+    };
+    private static int batchSize;
+    private static long epoch = ThreadLocalRandom.current().nextLong();
+    private static long sequence;
+
+    public static void register() {
+        Cluster.registerHandler(Cluster.CHAT, GuildChatRelay::onBatch);
+        ServerTickEvents.END_SERVER_TICK.register(GuildChatRelay::flush);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+    }
+
+    /**
+     * Queues a guild chat message for the other servers, messages beyond the configured queue size are dropped.
+     *
+     * @param alliance the guild of the sender if it is an alliance chat message, otherwise {@code null}
+     */
+    public static void publish(AbstractTeam team, AbstractTeam alliance, Text senderName, String senderPlainName,
+                               String message) {
+        if (!Cluster.isRunning()) return;
+        if (batchSize >= TeamCommand.getConfig().relayQueueSize) {
+            GuildMetrics.recordRelayDropped(1);
+            return;
+        }
+        scratch.reset();
+        try {
+            scratchOut.writeLong(sequence);
+            scratchOut.writeUTF(team.getName());
+            scratchOut.writeUTF(alliance == null ? "" : alliance.getName());
+            scratchOut.writeUTF(Text.Serializer.toJson(senderName));
+            scratchOut.writeUTF(senderPlainName);
+            scratchOut.writeUTF(message);
+            scratch.writeTo(batch);
+            sequence++;
+            batchSize++;
+        } catch (IOException ex) {
+            LOGGER.error("Could not encode guild chat message for the relay", ex);
+        }
+    }
+
+    private static void flush(MinecraftServer server) {
+        if (batchSize == 0) return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(Cluster.getServerId());
+            out.writeLong(epoch);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(batchSize);
+            batch.writeTo(out);
+
+            if (Cluster.broadcast(Cluster.CHAT, bytes.toByteArray())) {
+                GuildMetrics.recordRelaySent(batchSize);
+            } else {
+                GuildMetrics.recordRelayDropped(batchSize);
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Could not encode guild chat batch for the relay", ex);
+        }
+        batch.reset();
+        batchSize = 0;
+    }
+
+    private static void onBatch(byte[] payload) {
+        MinecraftServer server = Cluster.getServer();
+        if (server == null) return;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            String origin = in.readUTF();
+            long originEpoch = in.readLong();
+            long sentAt = in.readLong();
+            int count = in.readInt();
+            GuildMetrics.recordRelayLatency(Math.max(0, System.currentTimeMillis() - sentAt) * 1_000_000);
+            for (int i = 0; i < count; i++) {
+                long messageSequence = in.readLong();
+                String teamName = in.readUTF();
+                String allianceName = in.readUTF();
+                Text senderName = Text.Serializer.fromJson(in.readUTF());
+                String senderPlainName = in.readUTF();
+                String message = in.readUTF();
+
+                if (seen.put(origin + ':' + originEpoch + ':' + messageSequence, Boolean.TRUE) != null) {
+                    GuildMetrics.recordRelayDuplicate();
+                    continue;
+                }
+                GuildMetrics.recordRelayReceived();
+                Team team = server.getScoreboard().getTeam(teamName);
+                if (team == null || senderName == null) continue;
+                Team alliance = allianceName.isEmpty() ? null : server.getScoreboard().getTeam(allianceName);
+                if (!allianceName.isEmpty() && alliance == null) continue;
+                TeamUtil.sendRelayedGuildChat(team, alliance, senderName, senderPlainName, message);
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Dropping malformed guild chat batch", ex);
+        }
+    }
+
+    private static void clear() {
+        batch.reset();
+        batchSize = 0;
+        seen.clear();
+        epoch = ThreadLocalRandom.current().nextLong();
+        sequence = 0;
+    }
+}
@@ -0,0 +1,367 @@
+package io.github.beabfc.teamcmd.cluster;
+
+import io.github.beabfc.teamcmd.GuildOwners;
+import io.github.beabfc.teamcmd.TeamTags;
+import io.github.beabfc.teamcmd.TeamUpdates;
+import io.github.beabfc.teamcmd.metrics.GuildMetrics;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Replicates guilds between the servers of a network. The state is kept as last-writer-wins registers: one per guild
+ * holding its settings and owner, and one per player holding their guild. Every local change to the scoreboard bumps
+ * the version of its register and is sent to the peers as a delta at the end of the tick. A delta is only applied if
+ * its version is newer than the one already known, so deltas can be applied any number of times and in any order.
+ * Versions are hybrid logical clocks, ties are broken by the id of the originating server. The guilds a server already
+ * has when it starts are versioned with its clock at that moment, so where two servers start with different state for
+ * a guild, the one that started later wins.
+ *
+ * <p>When a connection to a peer is established, it is sent every register. That way a server that was cut off
+ * catches up without a log of the deltas it missed. Deltas and snapshots are split into payloads of at most
+ * {@link #MAX_PAYLOAD_SIZE} bytes, which is possible because the registers don't depend on each other.
+ */
+public abstract class GuildReplicator {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final byte GUILD = 1;
+    private static final byte MEMBER = 2;
+    // well below the frame limit of the transport, a single register is at most a few hundred bytes
+    private static final int MAX_PAYLOAD_SIZE = 256 * 1024;
+
+    private static final Map<String, Register<GuildState>> guilds = new HashMap<>();
+    private static final Map<String, Register<String>> members = new HashMap<>();
+    private static final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private static final DataOutputStream batchOut = new DataOutputStream(batch);
+    private static int batchSize;
+    private static long clock;
+    private static boolean applying;
+    private static MinecraftServer server;
+
+    public static void register() {
+        Cluster.registerHandler(Cluster.REPLICATION, new Cluster.Handler() {
+            @Override
+            public void onMessage(byte[] payload) {
+                onDeltas(payload);
+            }
+
+            @Override
+            public void onPeerConnected(String peer) {
+                sendSnapshot(peer);
+            }
+        });
+        ServerLifecycleEvents.SERVER_STARTED.register(GuildReplicator::start);
+        ServerLifecycleEvents.SERVER_STOPPED.register(minecraftServer -> clear());
+        ServerTickEvents.END_SERVER_TICK.register(minecraftServer -> flush());
+    }
+
+    public static void onTeamUpdated(Team team) {
+        if (!isActive()) return;
+        GuildState state = GuildState.of(team);
+        Register<GuildState> current = guilds.get(team.getName());
+        if (current != null && state.equals(current.value)) return;
+
+        Register<GuildState> register = new Register<>(nextVersion(), state);
+        guilds.put(team.getName(), register);
+        writeGuild(batchOut, team.getName(), register);
+    }
+
+    public static void onOwnerChanged(String teamName) {
+        if (!isActive()) return;
+        Team team = server.getScoreboard().getTeam(teamName);
+        if (team != null) onTeamUpdated(team);
+    }
+
+    public static void onTeamRemoved(Team team) {
+        if (!isActive()) return;
+        Register<GuildState> register = new Register<>(nextVersion(), GuildState.REMOVED);
+        guilds.put(team.getName(), register);
+        clearMembers(team.getName(), register.version);
+        writeGuild(batchOut, team.getName(), register);
+    }
+
+    public static void onMembershipChanged(String playerName, String teamName) {
+        if (!isActive()) return;
+        Register<String> current = members.get(playerName);
+        if (current != null && Objects.equals(current.value, teamName)) return;
+
+        Register<String> register = new Register<>(nextVersion(), teamName);
+        members.put(playerName, register);
+        writeMember(batchOut, playerName, register);
+    }
+
+    private static boolean isActive() {
+        return server != null && !applying;
+    }
+
+    private static Version nextVersion() {
+        clock = Math.max(clock + 1, System.currentTimeMillis());
+        return new Version(clock, Cluster.getServerId());
+    }
+
+    private static void start(MinecraftServer minecraftServer) {
+        if (!Cluster.isRunning()) return;
+        server = minecraftServer;
+        // the existing state counts as changed at startup, so it competes with the state of the peers like any change
+        Version initial = nextVersion();
+        for (Team team : minecraftServer.getScoreboard().getTeams()) {
+            guilds.put(team.getName(), new Register<>(initial, GuildState.of(team)));
+            for (String playerName : team.getPlayerList()) {
+                members.put(playerName, new Register<>(initial, team.getName()));
+            }
+        }
+    }
+
+    private static void flush() {
+        if (batchSize == 0) return;
+        byte[] payload = withCount(batch, batchSize);
+        if (!Cluster.broadcast(Cluster.REPLICATION, payload)) {
+            LOGGER.warn("Could not send {} guild changes to every peer, they will catch up on reconnect", batchSize);
+        }
+        batch.reset();
+        batchSize = 0;
+    }
+
+    private static void sendSnapshot(String peer) {
+        if (server == null) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        boolean sent = true;
+        int count = 0;
+        // guilds first, so that memberships can be applied right away
+        for (Map.Entry<String, Register<GuildState>> entry : guilds.entrySet()) {
+            writeGuild(out, entry.getKey(), entry.getValue());
+            count++;
+            if (bytes.size() >= MAX_PAYLOAD_SIZE) {
+                sent &= sendSnapshotPart(peer, bytes, count);
+                count = 0;
+            }
+        }
+        for (Map.Entry<String, Register<String>> entry : members.entrySet()) {
+            writeMember(out, entry.getKey(), entry.getValue());
+            count++;
+            if (bytes.size() >= MAX_PAYLOAD_SIZE) {
+                sent &= sendSnapshotPart(peer, bytes, count);
+                count = 0;
+            }
+        }
+        if (count > 0) sent &= sendSnapshotPart(peer, bytes, count);
+        if (!sent) LOGGER.warn("Could not send the whole guild snapshot to {}", peer);
+    }
+
+    private static boolean sendSnapshotPart(String peer, ByteArrayOutputStream bytes, int count) {
+        boolean sent = Cluster.send(peer, Cluster.REPLICATION, withCount(bytes, count));
+        bytes.reset();
+        return sent;
+    }
+
+    private static void onDeltas(byte[] payload) {
+        if (server == null) return;
+        applying = true;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            int count = in.readInt();
+            int applied = 0;
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                Version version = new Version(in.readLong(), in.readUTF());
+                clock = Math.max(clock, version.clock);
+                String key = in.readUTF();
+                boolean newer;
+                if (type == GUILD) {
+                    newer = applyGuild(key, new Register<>(version, readGuildState(in)));
+                } else if (type == MEMBER) {
+                    newer = applyMember(key, new Register<>(version, in.readBoolean() ? in.readUTF() : null));
+                } else {
+                    throw new IOException("Unknown guild delta " + type);
+                }
+                if (newer) applied++;
+            }
+            GuildMetrics.recordReplication(count, applied);
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Dropping malformed guild changes", ex);
+        } finally {
+            applying = false;
+        }
+    }
+
+    private static boolean applyGuild(String name, Register<GuildState> register) {
+        Register<GuildState> current = guilds.get(name);
+        if (current != null && current.version.compareTo(register.version) >= 0) return false;
+        guilds.put(name, register);
+
+        Scoreboard scoreboard = server.getScoreboard();
+        Team team = scoreboard.getTeam(name);
+        GuildState state = register.value;
+        if (!state.alive()) {
+            clearMembers(name, register.version);
+            if (team != null) scoreboard.removeTeam(team);
+            return true;
+        }
+
+        boolean created = team == null;
+        Team target = created ? scoreboard.addTeam(name) : team;
+        TeamUpdates.batch(() -> {
+            if (!target.getDisplayName().getString().equals(state.displayName())) {
+                target.setDisplayName(Text.literal(state.displayName()));
+            }
+            if (target.getColor() != state.color()) target.setColor(state.color());
+            if (target.isFriendlyFireAllowed() != state.friendlyFire()) target.setFriendlyFireAllowed(state.friendlyFire());
+            if (target.shouldShowFriendlyInvisibles() != state.seeInvisibles()) {
+                target.setShowFriendlyInvisibles(state.seeInvisibles());
+            }
+            TeamTags.update(target);
+        });
+
+        UUID owner = GuildOwners.getOwner(name);
+        if (state.owner() == null && owner != null) {
+            GuildOwners.clearOwner(owner);
+        } else if (state.owner() != null && !state.owner().equals(owner)) {
+            GuildOwners.setOwner(state.owner(), name);
+        }
+
+        if (created) {
+            // memberships may have arrived before the guild did
+            members.forEach((playerName, member) -> {
+                if (name.equals(member.value)) scoreboard.addPlayerToTeam(playerName, target);
+            });
+        }
+        return true;
+    }
+
+    private static boolean applyMember(String playerName, Register<String> register) {
+        Register<String> current = members.get(playerName);
+        if (current != null && current.version.compareTo(register.version) >= 0) return false;
+        members.put(playerName, register);
+
+        Scoreboard scoreboard = server.getScoreboard();
+        if (register.value == null) {
+            scoreboard.clearPlayerTeam(playerName);
+        } else {
+            Team team = scoreboard.getTeam(register.value);
+            if (team != null && scoreboard.getPlayerTeam(playerName) != team) {
+                scoreboard.addPlayerToTeam(playerName, team);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Members of a removed guild are cleared with the version of the removal, on every server alike, so that they
+     * don't rejoin if a guild with the same name is created later.
+     */
+    private static void clearMembers(String teamName, Version version) {
+        for (Map.Entry<String, Register<String>> entry : members.entrySet()) {
+            Register<String> register = entry.getValue();
+            if (teamName.equals(register.value) && register.version.compareTo(version) < 0) {
+                entry.setValue(new Register<>(version, null));
+            }
+        }
+    }
+
+    private static void writeGuild(DataOutputStream out, String name, Register<GuildState> register) {
+        try {
+            writeHeader(out, GUILD, register.version, name);
+            GuildState state = register.value;
+            out.writeBoolean(state.alive());
+            if (state.alive()) {
+                out.writeUTF(state.displayName());
+                out.writeUTF(state.color().getName());
+                out.writeBoolean(state.friendlyFire());
+                out.writeBoolean(state.seeInvisibles());
+                out.writeBoolean(state.owner() != null);
+                if (state.owner() != null) {
+                    out.writeLong(state.owner().getMostSignificantBits());
+                    out.writeLong(state.owner().getLeastSignificantBits());
+                }
+            }
+            if (out == batchOut) onBatched();
+        } catch (IOException ex) {
+            LOGGER.error("Could not encode changes to guild {}", name, ex);
+        }
+    }
+
+    private static void writeMember(DataOutputStream out, String playerName, Register<String> register) {
+        try {
+            writeHeader(out, MEMBER, register.version, playerName);
+            out.writeBoolean(register.value != null);
+            if (register.value != null) out.writeUTF(register.value);
+            if (out == batchOut) onBatched();
+        } catch (IOException ex) {
+            LOGGER.error("Could not encode the guild of {}", playerName, ex);
+        }
+    }
+
+    // a tick with a lot of changes, like a config reload, is sent in several payloads
+    private static void onBatched() {
+        batchSize++;
+        if (batch.size() >= MAX_PAYLOAD_SIZE) flush();
+    }
+
+    private static void writeHeader(DataOutputStream out, byte type, Version version, String key) throws IOException {
+        out.writeByte(type);
+        out.writeLong(version.clock);
+        out.writeUTF(version.origin);
+        out.writeUTF(key);
+    }
+
+    private static GuildState readGuildState(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return GuildState.REMOVED;
+        String displayName = in.readUTF();
+        Formatting color = Formatting.byName(in.readUTF());
+        boolean friendlyFire = in.readBoolean();
+        boolean seeInvisibles = in.readBoolean();
+        UUID owner = in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+        return new GuildState(true, displayName, color == null ? Formatting.RESET : color, friendlyFire, seeInvisibles,
+            owner);
+    }
+
+    private static byte[] withCount(ByteArrayOutputStream deltas, int count) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(deltas.size() + 4);
+        try {
+            new DataOutputStream(bytes).writeInt(count);
+            deltas.writeTo(bytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void clear() {
+        guilds.clear();
+        members.clear();
+        batch.reset();
+        batchSize = 0;
+        server = null;
+    }
+
+    private record Version(long clock, String origin) implements Comparable<Version> {
+
+        @Override
+        public int compareTo(Version other) {
+            int result = Long.compare(this.clock, other.clock);
+            return result != 0 ? result : this.origin.compareTo(other.origin);
+        }
+    }
+
+    private record Register<T>(Version version, T value) {
+    }
+
+    private record GuildState(boolean alive, String displayName, Formatting color, boolean friendlyFire,
+                              boolean seeInvisibles, UUID owner) {
+        private static final GuildState REMOVED = new GuildState(false, "", Formatting.RESET, true, true, null);
+
+        private static GuildState of(Team team) {
+            return new GuildState(true, team.getDisplayName().getString(), team.getColor(),
+                team.isFriendlyFireAllowed(), team.shouldShowFriendlyInvisibles(), GuildOwners.getOwner(team.getName()));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.beabfc.teamcmd.cluster;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plain TCP transport without any external broker. Every server listens for its peers and opens one connection to
+ * each of them, connections are only used in one direction: outgoing ones for sending, incoming ones for receiving.
+ * Frames are {@code [int length][byte channel][payload]}. Each outgoing connection has a bounded queue which is
+ * drained by its own thread, so a slow or unreachable peer never holds up the server.
+ */
+public class TcpTransport implements ClusterTransport {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAX_FRAME_SIZE = 1 << 20;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int RECONNECT_DELAY_MILLIS = 5000;
+
+    private final InetSocketAddress bindAddress;
+    private final List<String> peers;
+    private final int queueSize;
+    private final Map<String, Link> links = new ConcurrentHashMap<>();
+    private final Set<Socket> incoming = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private Listener listener;
+
+    /**
+     * @param bindAddress where to listen for peers or {@code null} to only send
+     * @param peers       {@code host:port} of every other server
+     * @param queueSize   how many messages may wait for each peer
+     */
+    public TcpTransport(InetSocketAddress bindAddress, List<String> peers, int queueSize) {
+        this.bindAddress = bindAddress;
+        this.peers = peers;
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public void start(Listener listener) throws IOException {
+        this.listener = listener;
+        this.running = true;
+        if (this.bindAddress != null) {
+            this.serverSocket = new ServerSocket();
+            this.serverSocket.bind(this.bindAddress);
+            startThread("TeamCommand Cluster Listener", this::acceptLoop);
+        }
+        for (String peer : this.peers) {
+            Link link = new Link(peer, parseAddress(peer));
+            this.links.put(peer, link);
+            link.thread = startThread("TeamCommand Cluster Link " + peer, link::run);
+        }
+    }
+
+    @Override
+    public boolean broadcast(byte channel, byte[] payload) {
+        byte[] frame = frame(channel, payload);
+        boolean delivered = true;
+        for (Link link : this.links.values()) {
+            delivered &= link.queue.offer(frame);
+        }
+        return delivered;
+    }
+
+    @Override
+    public boolean send(String peer, byte channel, byte[] payload) {
+        Link link = this.links.get(peer);
+        return link != null && link.queue.offer(frame(channel, payload));
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        closeQuietly(this.serverSocket);
+        for (Socket socket : this.incoming) {
+            closeQuietly(socket);
+        }
+        for (Link link : this.links.values()) {
+            closeQuietly(link.socket);
+            if (link.thread != null) link.thread.interrupt();
+        }
+        this.links.clear();
+    }
+
+    private void acceptLoop() {
+        while (this.running) {
+            try {
+                Socket socket = this.serverSocket.accept();
+                this.incoming.add(socket);
+                startThread("TeamCommand Cluster Reader " + socket.getRemoteSocketAddress(), () -> readLoop(socket));
+            } catch (IOException ex) {
+                if (this.running) LOGGER.error("Could not accept cluster connection", ex);
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (this.running) {
+                int length = in.readInt();
+                if (length < 1 || length > MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte channel = in.readByte();
+                byte[] payload = new byte[length - 1];
+                in.readFully(payload);
+                this.listener.onMessage(channel, payload);
+            }
+        } catch (EOFException | SocketException ex) {
+            // the peer went away, it will reconnect on its own
+        } catch (IOException ex) {
+            LOGGER.warn("Closing cluster connection from {}", socket.getRemoteSocketAddress(), ex);
+        } finally {
+            this.incoming.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static byte[] frame(byte channel, byte[] payload) {
+        byte[] frame = new byte[payload.length + 5];
+        int length = payload.length + 1;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        frame[4] = channel;
+        System.arraycopy(payload, 0, frame, 5, payload.length);
+        return frame;
+    }
+
+    private static InetSocketAddress parseAddress(String peer) {
+        int separator = peer.lastIndexOf(':');
+        if (separator < 0) throw new IllegalArgumentException("Peer " + peer + " is not in the form host:port");
+        return InetSocketAddress.createUnresolved(peer.substring(0, separator),
+            Integer.parseInt(peer.substring(separator + 1)));
+    }
+
+    private static Thread startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private class Link {
+        private final String peer;
+        private final InetSocketAddress address;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(TcpTransport.this.queueSize);
+        private volatile Socket socket;
+        private Thread thread;
+        private boolean warned;
+
+        private Link(String peer, InetSocketAddress address) {
+            this.peer = peer;
+            this.address = address;
+        }
+
+        private void run() {
+            while (TcpTransport.this.running) {
+                try (Socket connection = new Socket()) {
+                    this.socket = connection;
+                    connection.connect(new InetSocketAddress(this.address.getHostString(), this.address.getPort()),
+                        CONNECT_TIMEOUT_MILLIS);
+                    connection.setTcpNoDelay(true);
+                    LOGGER.info("Connected to cluster peer {}", this.peer);
+                    this.warned = false;
+                    TcpTransport.this.listener.onPeerConnected(this.peer);
+
+                    OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+                    while (TcpTransport.this.running) {
+                        out.write(this.queue.take());
+                        // write everything that is already queued in one go
+                        if (this.queue.isEmpty()) out.flush();
+                    }
+                } catch (IOException ex) {
+                    if (!this.warned && TcpTransport.this.running) {
+                        LOGGER.warn("Lost connection to cluster peer {}, retrying: {}", this.peer, ex.getMessage());
+                        this.warned = true;
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+}
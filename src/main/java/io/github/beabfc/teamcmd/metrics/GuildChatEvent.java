@@ -0,0 +1,14 @@
+package io.github.beabfc.teamcmd.metrics;
+
+import jdk.jfr.*;
+
+@Name("teamcmd.GuildChat")
+@Label("Guild Chat Fan-out")
+@Category("TeamCommand")
+@StackTrace(false)
+public class GuildChatEvent extends Event {
+    @Label("Guild")
+    public String guild;
+    @Label("Recipients")
+    public int recipients;
+}
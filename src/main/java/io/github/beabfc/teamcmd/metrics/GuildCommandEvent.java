@@ -0,0 +1,16 @@
+package io.github.beabfc.teamcmd.metrics;
+
+import jdk.jfr.*;
+
+@Name("teamcmd.GuildCommand")
+@Label("Guild Command")
+@Category("TeamCommand")
+@StackTrace(false)
+public class GuildCommandEvent extends Event {
+    @Label("Command")
+    public String command;
+    @Label("Result")
+    public int result;
+    @Label("Failed")
+    public boolean failed;
+}
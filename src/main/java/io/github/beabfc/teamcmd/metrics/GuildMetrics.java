@@ -0,0 +1,155 @@
+package io.github.beabfc.teamcmd.metrics;
+
+import com.mojang.brigadier.Command;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime statistics of the mod, shown by {@code /guild admin stats}. Everything is recorded on the server thread,
+ * except for the counters of throttled and dropped messages which are also updated by the network threads.
+ * The same measurements are emitted as JFR events so they can be lined up with tick spikes in a recording.
+ */
+public abstract class GuildMetrics {
+    private static final Map<String, CommandStats> commands = new LinkedHashMap<>();
+    private static final Histogram fanOutLatency = new Histogram();
+    private static final Histogram fanOutSize = new Histogram();
+    private static final Histogram inviteTickLatency = new Histogram();
+    private static final Histogram ownerSaveLatency = new Histogram();
+    private static final Histogram relayLatency = new Histogram();
+    private static long ownerSaveFailures;
+    private static long relaySent;
+    private static long relayReceived;
+    private static long relayDuplicates;
+    private static long replicationReceived;
+    private static long replicationApplied;
+    // the only counters that are updated from the network threads as well
+    private static final LongAdder playerChatThrottled = new LongAdder();
+    private static final LongAdder guildChatThrottled = new LongAdder();
+    private static final LongAdder relayDropped = new LongAdder();
+
+    /**
+     * Wraps a command so that its latency is recorded under the given name.
+     */
+    public static Command<ServerCommandSource> timed(String name, Command<ServerCommandSource> command) {
+        CommandStats stats = commands.computeIfAbsent(name, n -> new CommandStats());
+        return ctx -> {
+            GuildCommandEvent event = new GuildCommandEvent();
+            event.begin();
+            long start = System.nanoTime();
+            boolean failed = true;
+            int result = 0;
+            try {
+                result = command.run(ctx);
+                failed = false;
+                return result;
+            } finally {
+                stats.latency.record(System.nanoTime() - start);
+                if (failed) stats.failures++;
+                if (event.shouldCommit()) {
+                    event.command = name;
+                    event.result = result;
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    public static void recordFanOut(int recipients, long nanos) {
+        fanOutSize.record(recipients);
+        fanOutLatency.record(nanos);
+    }
+
+    public static void recordInviteTick(long nanos) {
+        inviteTickLatency.record(nanos);
+    }
+
+    public static void recordOwnerSave(long nanos, boolean failed) {
+        ownerSaveLatency.record(nanos);
+        if (failed) ownerSaveFailures++;
+    }
+
+    public static void recordChatThrottled(boolean guildLimit) {
+        (guildLimit ? guildChatThrottled : playerChatThrottled).increment();
+    }
+
+    public static long getPlayerChatThrottled() {
+        return playerChatThrottled.sum();
+    }
+
+    public static long getGuildChatThrottled() {
+        return guildChatThrottled.sum();
+    }
+
+    public static void recordRelaySent(int messages) {
+        relaySent += messages;
+    }
+
+    public static void recordRelayReceived() {
+        relayReceived++;
+    }
+
+    public static void recordRelayDuplicate() {
+        relayDuplicates++;
+    }
+
+    public static void recordRelayDropped(int messages) {
+        relayDropped.add(messages);
+    }
+
+    public static void recordRelayLatency(long nanos) {
+        relayLatency.record(nanos);
+    }
+
+    public static void recordReplication(int received, int applied) {
+        replicationReceived += received;
+        replicationApplied += applied;
+    }
+
+    public static Text report(int queuedInvites, int ownerQueueDepth) {
+        MutableText text = Text.translatable("commands.teamcmd.admin.stats.header");
+        for (Map.Entry<String, CommandStats> entry : commands.entrySet()) {
+            CommandStats stats = entry.getValue();
+            if (stats.latency.getCount() == 0) continue;
+            text.append("\n").append(Text.translatable("commands.teamcmd.admin.stats.command", entry.getKey(),
+                stats.latency.getCount(), stats.failures, latency(stats.latency)));
+        }
+        text.append("\n").append(Text.translatable("commands.teamcmd.admin.stats.fanout", fanOutSize.getCount(),
+            String.format("%.1f", fanOutSize.getMean()), fanOutSize.getPercentile(99), fanOutSize.getMax(),
+            latency(fanOutLatency)));
+        text.append("\n").append(Text.translatable("commands.teamcmd.admin.stats.throttled",
+            getPlayerChatThrottled(), getGuildChatThrottled()));
+        if (relaySent + relayReceived + relayDropped.sum() > 0) {
+            text.append("\n").append(Text.translatable("commands.teamcmd.admin.stats.relay", relaySent,
+                relayReceived, relayDuplicates, relayDropped.sum(), latency(relayLatency)));
+        }
+        if (replicationReceived > 0) {
+            text.append("\n").append(Text.translatable("commands.teamcmd.admin.stats.replication",
+                replicationReceived, replicationApplied));
+        }
+        text.append("\n").append(Text.translatable("commands.teamcmd.admin.stats.invites", queuedInvites,
+            latency(inviteTickLatency)));
+        text.append("\n").append(Text.translatable("commands.teamcmd.admin.stats.owners", ownerQueueDepth,
+            ownerSaveLatency.getCount(), ownerSaveFailures, latency(ownerSaveLatency)));
+        return text;
+    }
+
+    private static Text latency(Histogram histogram) {
+        return Text.translatable("commands.teamcmd.admin.stats.latency", millis(histogram.getMean()),
+            millis(histogram.getPercentile(50)), millis(histogram.getPercentile(99)), millis(histogram.getMax()));
+    }
+
+    private static String millis(double nanos) {
+        return String.format("%.3f", nanos / 1_000_000);
+    }
+
+    private static class CommandStats {
+        private final Histogram latency = new Histogram();
+        private long failures;
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.beabfc.teamcmd.metrics;
+
+/**
+ * Histogram with power-of-two buckets. Recording is a couple of arithmetic operations and never allocates;
+ * percentiles are reported as the upper bound of the bucket they fall into. Not thread-safe, values are recorded on
+ * the server thread.
+ */
+public class Histogram {
+    private final long[] buckets = new long[64];
+    private long count;
+    private long sum;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this.buckets[63 - Long.numberOfLeadingZeros(value | 1)]++;
+        this.count++;
+        this.sum += value;
+        if (value > this.max) this.max = value;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    public long getPercentile(double percentile) {
+        if (this.count == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100 * this.count);
+        long seen = 0;
+        for (int i = 0; i < this.buckets.length; i++) {
+            seen += this.buckets[i];
+            if (seen >= rank) return Math.min(this.max, (2L << i) - 1);
+        }
+        return this.max;
+    }
+}
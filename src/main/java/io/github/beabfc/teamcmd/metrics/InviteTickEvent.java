@@ -0,0 +1,14 @@
+package io.github.beabfc.teamcmd.metrics;
+
+import jdk.jfr.*;
+
+@Name("teamcmd.InviteTick")
+@Label("Invite Expiry")
+@Category("TeamCommand")
+@StackTrace(false)
+public class InviteTickEvent extends Event {
+    @Label("Expired Invites")
+    public int expired;
+    @Label("Queued Invites")
+    public int queued;
+}
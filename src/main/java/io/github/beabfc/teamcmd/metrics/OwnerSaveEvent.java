@@ -0,0 +1,17 @@
+package io.github.beabfc.teamcmd.metrics;
+
+import jdk.jfr.*;
+
+@Name("teamcmd.OwnerSave")
+@Label("Guild Owner Save")
+@Description("Write of a guild owner to LuckPerms")
+@Category("TeamCommand")
+@StackTrace(false)
+public class OwnerSaveEvent extends Event {
+    @Label("Owner")
+    public String owner;
+    @Label("Failed")
+    public boolean failed;
+    @Label("Queue Depth")
+    public int queueDepth;
+}
@@ -0,0 +1,20 @@
+package io.github.beabfc.teamcmd.mixin;
+
+import io.github.beabfc.teamcmd.GuildRelations;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.scoreboard.AbstractTeam;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+@Mixin(PlayerEntity.class)
+public class PlayerEntityMixin {
+
+    // called on the damaged player, allied guilds count as the same team so the friendly fire option of the damaged
+    // player's guild decides
+    @Redirect(method = "shouldDamagePlayer", at = @At(value = "INVOKE", target = "Lnet/minecraft/scoreboard/AbstractTeam;isEqual(Lnet/minecraft/scoreboard/AbstractTeam;)Z"))
+    private boolean isEqualOrAllied(AbstractTeam team, AbstractTeam other) {
+        return team.isEqual(other) || GuildRelations.isAllied(team, other);
+    }
+
+}
@@ -1,18 +1,20 @@
 package io.github.beabfc.teamcmd.mixin;
 
+import io.github.beabfc.teamcmd.GuildChatLimits;
+import io.github.beabfc.teamcmd.GuildSession;
+import io.github.beabfc.teamcmd.GuildSessions;
 import io.github.beabfc.teamcmd.TeamUtil;
 import net.minecraft.network.packet.c2s.play.ChatMessageC2SPacket;
+import net.minecraft.scoreboard.AbstractTeam;
 import net.minecraft.server.network.ServerPlayNetworkHandler;
 import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.text.MutableText;
+import net.minecraft.text.Text;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
-import java.util.UUID;
-
 @Mixin(ServerPlayNetworkHandler.class)
 public class ServerChatMixin {
 
@@ -21,13 +23,17 @@ public class ServerChatMixin {
 
     @Inject(at = @At("HEAD"), method = "onChatMessage", cancellable = true)
     public final void onChatMessage(ChatMessageC2SPacket packet, CallbackInfo ci) {
-        UUID uuid = player.getUuid();
-        boolean guildChatToggledOn = TeamUtil.guildChatToggleMap.computeIfAbsent(uuid, u -> false);
-
-        if (guildChatToggledOn) {
-            MutableText text = TeamUtil.getGuildChatFormat(player, packet.chatMessage());
-            TeamUtil.sendToTeammates(player, text);
-            player.sendMessage(text.formatted(player.getScoreboardTeam().getColor()));
+        GuildSession session = GuildSessions.get(player.getUuid());
+        AbstractTeam team = player.getScoreboardTeam();
+
+        if (session != null && session.isGuildChat() && team != null) {
+            // throttled here so that spam never reaches the server thread
+            if (GuildChatLimits.tryAcquire(session, team)) {
+                // chat packets are handled off the server thread, the fan-out has to happen on it
+                player.server.execute(() -> TeamUtil.sendGuildChat(player, packet.chatMessage()));
+            } else {
+                player.sendMessage(Text.translatable("commands.teamcmd.guildchat.throttled"));
+            }
             ci.cancel();
         }
 
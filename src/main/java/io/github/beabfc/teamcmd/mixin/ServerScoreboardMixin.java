@@ -0,0 +1,100 @@
+package io.github.beabfc.teamcmd.mixin;
+
+import io.github.beabfc.teamcmd.GuildArgument;
+import io.github.beabfc.teamcmd.GuildChatHistory;
+import io.github.beabfc.teamcmd.GuildChatLimits;
+import io.github.beabfc.teamcmd.GuildListings;
+import io.github.beabfc.teamcmd.GuildNameIndex;
+import io.github.beabfc.teamcmd.GuildOwners;
+import io.github.beabfc.teamcmd.GuildRegistry;
+import io.github.beabfc.teamcmd.GuildRelations;
+import io.github.beabfc.teamcmd.GuildRoster;
+import io.github.beabfc.teamcmd.PlayerDirectory;
+import io.github.beabfc.teamcmd.TeamUpdates;
+import io.github.beabfc.teamcmd.TeamUtil;
+import io.github.beabfc.teamcmd.api.GuildEvents;
+import io.github.beabfc.teamcmd.cluster.GuildReplicator;
+import io.github.beabfc.teamcmd.store.GuildStore;
+import net.minecraft.scoreboard.ServerScoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ServerScoreboard.class)
+public class ServerScoreboardMixin {
+
+    @Final
+    @Shadow
+    private MinecraftServer server;
+
+    @Inject(at = @At("RETURN"), method = "addPlayerToTeam")
+    public final void addPlayerToTeam(String playerName, Team team, CallbackInfoReturnable<Boolean> cir) {
+        if (cir.getReturnValueZ()) {
+            GuildRoster.onPlayerJoinedTeam(this.server, playerName, team);
+            GuildStore.onPlayerJoinedTeam(playerName, team);
+            PlayerDirectory.onTeamMember(playerName);
+            GuildListings.onTeamUpdated(team);
+            GuildReplicator.onMembershipChanged(playerName, team.getName());
+            GuildEvents.MEMBER_JOINED.invoker().onMemberJoined(team, playerName);
+        }
+    }
+
+    @Inject(at = @At("TAIL"), method = "removePlayerFromTeam")
+    public final void removePlayerFromTeam(String playerName, Team team, CallbackInfo ci) {
+        GuildRoster.onPlayerLeftTeam(this.server, playerName);
+        GuildStore.onPlayerLeftTeam(playerName, team);
+        GuildListings.onTeamUpdated(team);
+        GuildReplicator.onMembershipChanged(playerName, null);
+        GuildEvents.MEMBER_LEFT.invoker().onMemberLeft(team, playerName);
+    }
+
+    @Inject(at = @At("HEAD"), method = "updateScoreboardTeamAndPlayers")
+    public final void updateScoreboardTeamAndPlayers(Team team, CallbackInfo ci) {
+        GuildRegistry.onTeamAdded(team);
+        GuildChatLimits.onTeamAdded(team);
+        GuildNameIndex.onTeamUpdated(team);
+        GuildArgument.onTeamUpdated(team);
+        GuildListings.onTeamUpdated(team);
+        GuildStore.onTeamUpdated(team);
+        GuildReplicator.onTeamUpdated(team);
+        GuildEvents.CREATED.invoker().onCreated(team);
+    }
+
+    @Inject(at = @At("HEAD"), method = "updateScoreboardTeam", cancellable = true)
+    public final void updateScoreboardTeam(Team team, CallbackInfo ci) {
+        // the deferred update has already been seen when the setter was called
+        if (TeamUpdates.isFlushing()) return;
+
+        GuildNameIndex.onTeamUpdated(team);
+        GuildArgument.onTeamUpdated(team);
+        GuildListings.onTeamUpdated(team);
+        GuildStore.onTeamUpdated(team);
+        GuildReplicator.onTeamUpdated(team);
+        GuildEvents.SETTINGS_CHANGED.invoker().onSettingsChanged(team);
+        if (TeamUpdates.defer(team)) ci.cancel();
+    }
+
+    @Inject(at = @At("TAIL"), method = "updateRemovedTeam")
+    public final void updateRemovedTeam(Team team, CallbackInfo ci) {
+        GuildNameIndex.onTeamRemoved(team);
+        GuildArgument.onTeamRemoved(team);
+        GuildListings.onTeamRemoved(team);
+        GuildRoster.onTeamRemoved(team);
+        GuildChatLimits.onTeamRemoved(team);
+        GuildChatHistory.onTeamRemoved(team);
+        TeamUtil.onTeamRemoved(team);
+        GuildRelations.onTeamRemoved(team);
+        GuildOwners.onTeamRemoved(team);
+        GuildStore.onTeamRemoved(team);
+        GuildReplicator.onTeamRemoved(team);
+        GuildEvents.DISBANDED.invoker().onDisbanded(team);
+        GuildRegistry.onTeamRemoved(team);
+    }
+
+}
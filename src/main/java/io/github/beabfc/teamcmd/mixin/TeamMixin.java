@@ -1,5 +1,7 @@
 package io.github.beabfc.teamcmd.mixin;
 
+import io.github.beabfc.teamcmd.GuildIdHolder;
+import io.github.beabfc.teamcmd.GuildRegistry;
 import net.minecraft.scoreboard.Team;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Style;
@@ -9,12 +11,13 @@ import net.minecraft.util.Formatting;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 @Mixin(Team.class)
-public class TeamMixin {
+public class TeamMixin implements GuildIdHolder {
 
     @Shadow
     private Text displayName;
@@ -25,6 +28,9 @@ public class TeamMixin {
     private Text prefix;
     @Shadow
     private Text suffix;
+    // set on the server thread, read by the chat limits on the network threads
+    @Unique
+    private volatile int guildId = GuildRegistry.NO_ID;
 
 
     @Inject(at = @At("RETURN"), method = "getFormattedName", cancellable = true)
@@ -39,4 +45,14 @@ public class TeamMixin {
         cir.setReturnValue(mutableText);
     }
 
+    @Override
+    public int teamcmd$getGuildId() {
+        return this.guildId;
+    }
+
+    @Override
+    public void teamcmd$setGuildId(int id) {
+        this.guildId = id;
+    }
+
 }
@@ -0,0 +1,397 @@
+package io.github.beabfc.teamcmd.store;
+
+import net.minecraft.util.Formatting;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk format of the guild store: a snapshot of all guilds plus numbered journal files with the changes made
+ * since. Every record in a journal is framed with its length and a CRC so that a torn write at the end of the file
+ * is detected and ignored. Both are read through memory mapped buffers, all writes happen on a single background
+ * thread in the order they were submitted.
+ *
+ * <p>Compaction starts a new journal generation, then writes a snapshot that covers everything before it and
+ * deletes the older journals. On load every journal from the snapshots generation onwards is replayed, which stays
+ * correct if the server stops anywhere in between. The writer thread keeps its own copy of the guilds by applying
+ * every record it appends, so snapshots are written from that copy and never cost the server thread anything.
+ */
+public class GuildJournal {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int JOURNAL_MAGIC = 0x54434A31;
+    private static final int SNAPSHOT_MAGIC = 0x54435331;
+    private static final String SNAPSHOT_FILE = "guilds.snapshot";
+    private static final String JOURNAL_PREFIX = "guilds-";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    static final byte CREATE = 1;
+    static final byte REMOVE = 2;
+    static final byte DISPLAY_NAME = 3;
+    static final byte COLOR = 4;
+    static final byte FRIENDLY_FIRE = 5;
+    static final byte SEE_INVISIBLES = 6;
+    static final byte JOIN = 7;
+    static final byte LEAVE = 8;
+    static final byte OWNER = 9;
+
+    private final Path directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TeamCommand Guild Store");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // only touched by the writer thread once loaded
+    private final Map<String, GuildRecord> state = new HashMap<>();
+    private long generation;
+    private FileChannel journal;
+
+    public GuildJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the snapshot and replays the journals, then puts a copy of every guild into the given map. Must be called
+     * before any write is submitted.
+     *
+     * @return whether there was any stored data
+     */
+    public boolean load(Map<String, GuildRecord> guilds) throws IOException {
+        Files.createDirectories(this.directory);
+        boolean found = false;
+        long snapshotGeneration = 0;
+
+        Path snapshot = this.directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            snapshotGeneration = readSnapshot(map(snapshot), this.state);
+            found = true;
+        }
+
+        long lastGeneration = snapshotGeneration;
+        for (long journalGeneration : listJournals()) {
+            if (journalGeneration < snapshotGeneration) continue;
+            int records = replay(map(journalPath(journalGeneration)), this.state);
+            LOGGER.debug("Replayed {} guild changes from journal {}", records, journalGeneration);
+            lastGeneration = Math.max(lastGeneration, journalGeneration);
+            found = true;
+        }
+        // never append to a journal that might end with a torn record
+        this.generation = lastGeneration + 1;
+        for (GuildRecord record : this.state.values()) {
+            guilds.put(record.getName(), record.copy());
+        }
+        return found;
+    }
+
+    public void open() {
+        this.writer.execute(() -> {
+            try {
+                this.journal = createJournal(this.generation);
+            } catch (IOException ex) {
+                LOGGER.error("Could not open the guild journal", ex);
+            }
+        });
+    }
+
+    public void append(byte[] records) {
+        this.writer.execute(() -> {
+            try {
+                applyRecords(ByteBuffer.wrap(records), this.state);
+            } catch (IOException ex) {
+                LOGGER.error("Could not apply guild changes to the next snapshot", ex);
+            }
+            if (this.journal == null) return;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                while (buffer.hasRemaining()) {
+                    this.journal.write(buffer);
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Could not write to the guild journal", ex);
+            }
+        });
+    }
+
+    /**
+     * Replaces the journals written so far with a snapshot of every change that has been passed to {@link #append}
+     * before this call.
+     */
+    public void compact() {
+        this.writer.execute(() -> {
+            byte[] snapshot;
+            try {
+                snapshot = writeSnapshot(this.state.values());
+            } catch (IOException ex) {
+                LOGGER.error("Could not serialize the guild snapshot", ex);
+                return;
+            }
+            try {
+                long previous = this.generation;
+                if (this.journal != null) {
+                    this.journal.force(false);
+                    this.journal.close();
+                }
+                this.generation = previous + 1;
+                this.journal = createJournal(this.generation);
+
+                ByteBuffer.wrap(snapshot).putLong(4, this.generation);
+                Path temp = this.directory.resolve(SNAPSHOT_FILE + ".tmp");
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap(snapshot));
+                    channel.force(true);
+                }
+                Files.move(temp, this.directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+                for (long journalGeneration : listJournals()) {
+                    if (journalGeneration < this.generation) deleteJournal(journalGeneration);
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Could not compact the guild journal", ex);
+            }
+        });
+    }
+
+    public void close() {
+        this.writer.execute(() -> {
+            try {
+                if (this.journal != null) {
+                    this.journal.force(false);
+                    this.journal.close();
+                    this.journal = null;
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Could not close the guild journal", ex);
+            }
+        });
+        this.writer.shutdown();
+        try {
+            if (!this.writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOGGER.error("Timed out while writing the guild store");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Frames a single record for {@link #append}.
+     */
+    static void frame(ByteArrayOutputStream payload, DataOutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] bytes = payload.toByteArray();
+        crc.update(bytes);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    static void apply(DataInput in, Map<String, GuildRecord> guilds) throws IOException {
+        byte op = in.readByte();
+        String name = in.readUTF();
+        if (op == CREATE) {
+            guilds.put(name, new GuildRecord(name, in.readUTF(), readColor(in)));
+            return;
+        } else if (op == REMOVE) {
+            guilds.remove(name);
+            return;
+        }
+
+        GuildRecord record = guilds.get(name);
+        switch (op) {
+            case DISPLAY_NAME -> {
+                String displayName = in.readUTF();
+                if (record != null) record.displayName = displayName;
+            }
+            case COLOR -> {
+                Formatting color = readColor(in);
+                if (record != null) record.color = color;
+            }
+            case FRIENDLY_FIRE -> {
+                boolean friendlyFire = in.readBoolean();
+                if (record != null) record.friendlyFire = friendlyFire;
+            }
+            case SEE_INVISIBLES -> {
+                boolean seeInvisibles = in.readBoolean();
+                if (record != null) record.seeInvisibles = seeInvisibles;
+            }
+            case JOIN -> {
+                String member = in.readUTF();
+                if (record != null) record.members.add(member);
+            }
+            case LEAVE -> {
+                String member = in.readUTF();
+                if (record != null) record.members.remove(member);
+            }
+            case OWNER -> {
+                UUID owner = readUuid(in);
+                if (record != null) record.owner = owner;
+            }
+            default -> throw new IOException("Unknown guild journal record " + op);
+        }
+    }
+
+    static void writeColor(DataOutput out, Formatting color) throws IOException {
+        out.writeUTF(color.getName());
+    }
+
+    static void writeUuid(DataOutput out, UUID uuid) throws IOException {
+        out.writeBoolean(uuid != null);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static Formatting readColor(DataInput in) throws IOException {
+        Formatting color = Formatting.byName(in.readUTF());
+        return color == null ? Formatting.RESET : color;
+    }
+
+    private static UUID readUuid(DataInput in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    private static byte[] writeSnapshot(Collection<GuildRecord> guilds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        // the generation is filled in by the writer thread
+        out.writeLong(0);
+        out.writeInt(guilds.size());
+        for (GuildRecord record : guilds) {
+            out.writeUTF(record.getName());
+            out.writeUTF(record.displayName);
+            writeColor(out, record.color);
+            out.writeBoolean(record.friendlyFire);
+            out.writeBoolean(record.seeInvisibles);
+            writeUuid(out, record.owner);
+            out.writeInt(record.members.size());
+            for (String member : record.members) {
+                out.writeUTF(member);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long readSnapshot(ByteBuffer buffer, Map<String, GuildRecord> guilds) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+        if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a guild snapshot");
+        long generation = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            GuildRecord record = new GuildRecord(in.readUTF(), in.readUTF(), readColor(in));
+            record.friendlyFire = in.readBoolean();
+            record.seeInvisibles = in.readBoolean();
+            record.owner = readUuid(in);
+            int members = in.readInt();
+            for (int j = 0; j < members; j++) {
+                record.members.add(in.readUTF());
+            }
+            guilds.put(record.getName(), record);
+        }
+        return generation;
+    }
+
+    private static int replay(ByteBuffer buffer, Map<String, GuildRecord> guilds) throws IOException {
+        if (buffer.remaining() < 4 || buffer.getInt() != JOURNAL_MAGIC) return 0;
+        return applyRecords(buffer, guilds);
+    }
+
+    private static int applyRecords(ByteBuffer buffer, Map<String, GuildRecord> guilds) throws IOException {
+        int records = 0;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) break;
+
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) break;
+
+            apply(new DataInputStream(new ByteBufferInputStream(payload)), guilds);
+            records++;
+        }
+        if (buffer.hasRemaining()) {
+            LOGGER.warn("Ignoring {} bytes of incomplete guild changes at the end of the journal", buffer.remaining());
+        }
+        return records;
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private List<Long> listJournals() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX))
+                .forEach(name -> {
+                    try {
+                        generations.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length(),
+                            name.length() - JOURNAL_SUFFIX.length())));
+                    } catch (NumberFormatException ignored) {
+                    }
+                });
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return this.directory.resolve(JOURNAL_PREFIX + journalGeneration + JOURNAL_SUFFIX);
+    }
+
+    private FileChannel createJournal(long journalGeneration) throws IOException {
+        FileChannel channel = FileChannel.open(journalPath(journalGeneration), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        channel.write(ByteBuffer.allocate(4).putInt(0, JOURNAL_MAGIC));
+        return channel;
+    }
+
+    private void deleteJournal(long journalGeneration) {
+        try {
+            Files.deleteIfExists(journalPath(journalGeneration));
+        } catch (IOException ex) {
+            // mapped files can't be deleted on some platforms until they are unmapped, try again next time
+            LOGGER.debug("Could not delete guild journal {}", journalGeneration, ex);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!this.buffer.hasRemaining()) return -1;
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.beabfc.teamcmd.store;
+
+import net.minecraft.util.Formatting;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stored state of a single guild.
+ */
+public class GuildRecord {
+    private final String name;
+    String displayName;
+    Formatting color;
+    boolean friendlyFire = true;
+    boolean seeInvisibles = true;
+    UUID owner;
+    final Set<String> members = new LinkedHashSet<>();
+
+    GuildRecord(String name, String displayName, Formatting color) {
+        this.name = name;
+        this.displayName = displayName;
+        this.color = color;
+    }
+
+    GuildRecord copy() {
+        GuildRecord copy = new GuildRecord(this.name, this.displayName, this.color);
+        copy.friendlyFire = this.friendlyFire;
+        copy.seeInvisibles = this.seeInvisibles;
+        copy.owner = this.owner;
+        copy.members.addAll(this.members);
+        return copy;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getDisplayName() {
+        return this.displayName;
+    }
+
+    public Formatting getColor() {
+        return this.color;
+    }
+
+    public boolean isFriendlyFire() {
+        return this.friendlyFire;
+    }
+
+    public boolean isSeeInvisibles() {
+        return this.seeInvisibles;
+    }
+
+    public UUID getOwner() {
+        return this.owner;
+    }
+
+    public Set<String> getMembers() {
+        return this.members;
+    }
+}
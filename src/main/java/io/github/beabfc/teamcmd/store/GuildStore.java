@@ -0,0 +1,251 @@
+package io.github.beabfc.teamcmd.store;
+
+import io.github.beabfc.teamcmd.GuildOwners;
+import io.github.beabfc.teamcmd.TeamTags;
+import io.github.beabfc.teamcmd.TeamUpdates;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.scoreboard.Scoreboard;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+import net.minecraft.util.WorldSavePath;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The guild store is the source of truth for guilds, the scoreboard teams are projected from it when the server
+ * starts. Every change to a guild is recorded through the scoreboard hooks, collected for the current tick and
+ * appended to the {@link GuildJournal} at the end of it, so on the server thread saving the store costs as much as the
+ * number of changes. This does not apply to the teams in scoreboard.dat, which Minecraft still writes in full with
+ * every world save.
+ */
+public abstract class GuildStore {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String DIRECTORY = "teamcmd";
+    private static final int COMPACT_THRESHOLD = 10000;
+
+    private static final Map<String, GuildRecord> guilds = new HashMap<>();
+    private static final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private static final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private static final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private static final DataOutputStream batchOut = new DataOutputStream(batch);
+
+    private static GuildJournal journal;
+    private static boolean loaded;
+    private static boolean enabled;
+    private static int journaled;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTING.register(GuildStore::load);
+        ServerLifecycleEvents.SERVER_STARTED.register(GuildStore::project);
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> close());
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> clear());
+        ServerTickEvents.END_SERVER_TICK.register(server -> flush());
+    }
+
+    /**
+     * Whether the store had been written before this server start. Until then ownership from LuckPerms is adopted
+     * instead of being overwritten.
+     */
+    public static boolean isAuthoritative() {
+        return loaded;
+    }
+
+    public static GuildRecord get(String teamName) {
+        return guilds.get(teamName);
+    }
+
+    public static void onTeamUpdated(Team team) {
+        if (!enabled) return;
+        GuildRecord record = guilds.get(team.getName());
+        String displayName = team.getDisplayName().getString();
+        if (record == null) {
+            record = new GuildRecord(team.getName(), displayName, team.getColor());
+            guilds.put(record.getName(), record);
+            write(GuildJournal.CREATE, record.getName(), out -> {
+                out.writeUTF(displayName);
+                GuildJournal.writeColor(out, team.getColor());
+            });
+        }
+        if (!record.displayName.equals(displayName)) {
+            record.displayName = displayName;
+            write(GuildJournal.DISPLAY_NAME, record.getName(), out -> out.writeUTF(displayName));
+        }
+        if (record.color != team.getColor()) {
+            record.color = team.getColor();
+            write(GuildJournal.COLOR, record.getName(), out -> GuildJournal.writeColor(out, team.getColor()));
+        }
+        if (record.friendlyFire != team.isFriendlyFireAllowed()) {
+            record.friendlyFire = team.isFriendlyFireAllowed();
+            write(GuildJournal.FRIENDLY_FIRE, record.getName(), out -> out.writeBoolean(team.isFriendlyFireAllowed()));
+        }
+        if (record.seeInvisibles != team.shouldShowFriendlyInvisibles()) {
+            record.seeInvisibles = team.shouldShowFriendlyInvisibles();
+            write(GuildJournal.SEE_INVISIBLES, record.getName(),
+                out -> out.writeBoolean(team.shouldShowFriendlyInvisibles()));
+        }
+    }
+
+    public static void onPlayerJoinedTeam(String playerName, Team team) {
+        if (!enabled) return;
+        GuildRecord record = guilds.get(team.getName());
+        if (record != null && record.members.add(playerName)) {
+            write(GuildJournal.JOIN, record.getName(), out -> out.writeUTF(playerName));
+        }
+    }
+
+    public static void onPlayerLeftTeam(String playerName, Team team) {
+        if (!enabled) return;
+        GuildRecord record = guilds.get(team.getName());
+        if (record != null && record.members.remove(playerName)) {
+            write(GuildJournal.LEAVE, record.getName(), out -> out.writeUTF(playerName));
+        }
+    }
+
+    public static void onTeamRemoved(Team team) {
+        if (!enabled) return;
+        if (guilds.remove(team.getName()) != null) {
+            write(GuildJournal.REMOVE, team.getName(), out -> {
+            });
+        }
+    }
+
+    public static void setOwner(String teamName, UUID owner) {
+        if (!enabled) return;
+        GuildRecord record = guilds.get(teamName);
+        if (record != null && !Objects.equals(record.owner, owner)) {
+            record.owner = owner;
+            write(GuildJournal.OWNER, teamName, out -> GuildJournal.writeUuid(out, owner));
+        }
+    }
+
+    private static void load(MinecraftServer server) {
+        journal = new GuildJournal(server.getSavePath(WorldSavePath.ROOT).resolve(DIRECTORY));
+        long start = System.nanoTime();
+        try {
+            loaded = journal.load(guilds);
+        } catch (IOException ex) {
+            // continuing would overwrite the store with whatever is left on the scoreboard
+            throw new IllegalStateException("Could not load the guild store", ex);
+        }
+        journal.open();
+        LOGGER.info("Loaded {} guilds in {} ms", guilds.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Brings the scoreboard in line with the store. Once the store is authoritative, teams that only exist on the
+     * scoreboard are removed, for example a guild whose disband was journaled but not saved to {@code scoreboard.dat}
+     * before a crash. On the first start with the store, all teams of the scoreboard are added to it.
+     */
+    private static void project(MinecraftServer server) {
+        Scoreboard scoreboard = server.getScoreboard();
+        if (loaded) {
+            TeamUpdates.batch(() -> {
+                for (Team team : new ArrayList<>(scoreboard.getTeams())) {
+                    if (!guilds.containsKey(team.getName())) scoreboard.removeTeam(team);
+                }
+                for (GuildRecord record : guilds.values()) {
+                    projectRecord(scoreboard, record);
+                }
+            });
+        }
+        Map<String, UUID> owners = new HashMap<>();
+        for (GuildRecord record : guilds.values()) {
+            if (record.owner != null) owners.put(record.getName(), record.owner);
+        }
+        GuildOwners.load(owners);
+
+        enabled = true;
+        if (!loaded) {
+            for (Team team : scoreboard.getTeams()) {
+                onTeamUpdated(team);
+                for (String playerName : team.getPlayerList()) {
+                    onPlayerJoinedTeam(playerName, team);
+                }
+            }
+            // the first snapshot makes the store authoritative on the next start
+            append();
+            compact();
+        }
+    }
+
+    private static void projectRecord(Scoreboard scoreboard, GuildRecord record) {
+        Team team = scoreboard.getTeam(record.getName());
+        if (team == null) team = scoreboard.addTeam(record.getName());
+
+        if (!team.getDisplayName().getString().equals(record.displayName)) {
+            team.setDisplayName(Text.literal(record.displayName));
+        }
+        if (team.getColor() != record.color) team.setColor(record.color);
+        if (team.isFriendlyFireAllowed() != record.friendlyFire) team.setFriendlyFireAllowed(record.friendlyFire);
+        if (team.shouldShowFriendlyInvisibles() != record.seeInvisibles) {
+            team.setShowFriendlyInvisibles(record.seeInvisibles);
+        }
+
+        for (String playerName : new ArrayList<>(team.getPlayerList())) {
+            if (!record.members.contains(playerName)) scoreboard.removePlayerFromTeam(playerName, team);
+        }
+        for (String playerName : record.members) {
+            if (scoreboard.getPlayerTeam(playerName) != team) scoreboard.addPlayerToTeam(playerName, team);
+        }
+        TeamTags.update(team);
+    }
+
+    private static void write(byte op, String teamName, RecordWriter body) {
+        try {
+            payload.reset();
+            payloadOut.writeByte(op);
+            payloadOut.writeUTF(teamName);
+            body.write(payloadOut);
+            GuildJournal.frame(payload, batchOut);
+        } catch (IOException ex) {
+            // writing to memory only fails if a string is too long to be encoded
+            LOGGER.error("Could not record change to guild {}", teamName, ex);
+        }
+        journaled++;
+    }
+
+    private static void flush() {
+        append();
+        if (journaled >= COMPACT_THRESHOLD) compact();
+    }
+
+    private static void append() {
+        if (batch.size() == 0) return;
+        journal.append(batch.toByteArray());
+        batch.reset();
+    }
+
+    private static void compact() {
+        journal.compact();
+        journaled = 0;
+    }
+
+    private static void close() {
+        if (journal == null) return;
+        flush();
+        if (journaled > 0) compact();
+        journal.close();
+    }
+
+    private static void clear() {
+        guilds.clear();
+        batch.reset();
+        journal = null;
+        loaded = false;
+        enabled = false;
+        journaled = 0;
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}